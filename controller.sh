@@ -0,0 +1,13 @@
+
+BUILD_DIR=build/libs
+
+# if the directory exists, we're running locally; otherwise, trust the jar is in the same folder
+if [ -d "$BUILD_DIR" ]; then
+  cd $BUILD_DIR || exit
+fi
+
+# --add-opens lets the main loop replace the selector's internal key set with a garbage-free one (Java 9+; Java 8 just
+# ignores it); a larger Integer cache avoids the JDK selector boxing file descriptors on every event
+JVM_OPTS="-XX:+IgnoreUnrecognizedVMOptions --add-opens=java.base/sun.nio.ch=ALL-UNNAMED -XX:AutoBoxCacheMax=262144"
+
+java -Djava.net.preferIPv4Stack=true $JVM_OPTS -cp tcp-java-perf-1.0-SNAPSHOT.jar com.luciopaiva.LoadController "$@"
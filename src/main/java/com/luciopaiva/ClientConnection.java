@@ -0,0 +1,17 @@
+package com.luciopaiva;
+
+import java.nio.channels.SocketChannel;
+
+/** Server-side state of a connected client. It is attached to the client's selection key. */
+class ClientConnection {
+
+    final SocketChannel channel;
+
+    /** list currently holding this connection and the position it occupies there */
+    ClientList list;
+    int index;
+
+    ClientConnection(SocketChannel channel) {
+        this.channel = channel;
+    }
+}
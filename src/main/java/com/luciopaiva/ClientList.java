@@ -0,0 +1,48 @@
+package com.luciopaiva;
+
+import java.util.Arrays;
+
+/**
+ * Array-backed list of client connections. Unlike a HashSet, it can be walked by index without producing garbage.
+ * Removal is O(1): the last element is moved into the vacated position, so order is not preserved.
+ */
+class ClientList {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private ClientConnection[] connections = new ClientConnection[INITIAL_CAPACITY];
+    private int size = 0;
+
+    void add(ClientConnection connection) {
+        if (size == connections.length) {
+            connections = Arrays.copyOf(connections, size << 1);
+        }
+        connection.list = this;
+        connection.index = size;
+        connections[size++] = connection;
+    }
+
+    void remove(ClientConnection connection) {
+        if (connection.list != this) {
+            return;
+        }
+        size--;
+        ClientConnection last = connections[size];
+        connections[connection.index] = last;
+        last.index = connection.index;
+        connections[size] = null;
+        connection.list = null;
+    }
+
+    ClientConnection get(int index) {
+        return connections[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -10,16 +10,30 @@ public class Constants {
     public static final int SERVER_PORT = 3000;
     /** must be a power of two and greater than a long */
     public static final int PACKET_SIZE_IN_BYTES = 1024;
+    /** How many pre-generated payloads the server cycles through when sending. */
+    public static final int PAYLOAD_POOL_SIZE = 256;
+    /** Sizes drawn from payload size distributions are capped at this. */
+    public static final int MAX_PAYLOAD_SIZE_IN_BYTES = 1024 * 1024;
     public static final int DEFAULT_NUMBER_OF_CLIENTS = 10;
     public static final long METRICS_REPORT_PERIOD_IN_MILLIS = 1000;
     public static final long SEND_PERIOD_IN_MILLIS = 200;
-    /** When using the uniform sending strategy, we need a routine looping in high frequency to be able to cope with
-     *  the distribution of clients across the sending window. */
-    public static final int UNIFORM_STRATEGY_SELECT_TIMEOUT_IN_MILLIS = 20;
     /** The send window will be divided into this many slots. The more there is, the finer the grain of the
      *  distribution will be. For example, if the send window is of 200 ms (i.e., all clients must receive exactly one
      *  packet each 200 ms), dividing it by 100 slots means we'll have an opportunity to send something every 2 ms. */
     static final int UNIFORM_STRATEGY_NUMBER_OF_SLOTS = 10;
+    /** Initial capacity of the array that holds selected keys. It grows as needed, so this is just a starting point
+     *  to avoid resizing during the first connection storm. */
+    static final int SELECTED_KEYS_INITIAL_CAPACITY = 1024;
+    /** Spin and yield idle strategies: how many empty selectNow()s to spin through before backing off. */
+    static final int IDLE_MAX_SPINS = 100;
+    /** Park idle strategy: how many times to yield after spinning and before starting to park. */
+    static final int IDLE_MAX_YIELDS = 10;
+    /** Park idle strategy: first park period. It doubles every empty pass, up to the select() timeout. */
+    static final long IDLE_MIN_PARK_PERIOD_IN_NANOS = 1_000;
+    /** How long the load controller waits after all workers are ready before telling them to start, so the start
+     *  message reaches all of them in time. */
+    static final long CONTROLLER_START_DELAY_IN_MILLIS = 1000;
+    static final int CONTROL_BUFFER_SIZE_IN_BYTES = 4096;
 
     public enum SendStrategy {
         Burst("burst"),
@@ -45,4 +59,32 @@ public class Constants {
             return strategyByName.keySet().toString();
         }
     }
+
+    public enum IdleStrategy {
+        Block("block"),
+        BusySpin("spin"),
+        SpinYield("yield"),
+        SpinPark("park");
+
+        private static Map<String, IdleStrategy> strategyByName = new HashMap<>();
+        static {
+            for (IdleStrategy strategy : values()) {
+                strategyByName.put(strategy.name, strategy);
+            }
+        }
+
+        String name;
+
+        IdleStrategy(String name) {
+            this.name = name;
+        }
+
+        public static IdleStrategy getByName(String name) {
+            return strategyByName.get(name);
+        }
+
+        public static String getValidNames() {
+            return strategyByName.keySet().toString();
+        }
+    }
 }
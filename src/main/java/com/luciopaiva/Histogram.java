@@ -0,0 +1,126 @@
+package com.luciopaiva;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of non-negative values. Each power of two is split into 8 buckets, so values are kept with a
+ * relative error of at most 12.5%, using a fixed amount of memory and without producing garbage when recording.
+ *
+ * Histograms can be merged by adding up their buckets, which is what makes percentiles across several processes
+ * correct - percentiles themselves can't be averaged.
+ */
+class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUMBER_OF_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[NUMBER_OF_BUCKETS];
+    private long totalCount = 0;
+    private long max = 0;
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketIndexOf(value)]++;
+        totalCount++;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    void add(Histogram other) {
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        max = Math.max(max, other.max);
+    }
+
+    void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        max = 0;
+    }
+
+    long getCount() {
+        return totalCount;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the highest value of the bucket where the given percentile falls, or 0 if the histogram is empty
+     */
+    long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /** Writes non-empty buckets as "max;index:count,index:count,...", or "-" if the histogram is empty. */
+    void appendTo(StringBuilder builder) {
+        if (totalCount == 0) {
+            builder.append('-');
+            return;
+        }
+        builder.append(max).append(';');
+        boolean isFirst = true;
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            if (counts[i] > 0) {
+                if (!isFirst) {
+                    builder.append(',');
+                }
+                builder.append(i).append(':').append(counts[i]);
+                isFirst = false;
+            }
+        }
+    }
+
+    /** Adds up buckets in the format written by appendTo(). */
+    void addEncoded(String encoded) {
+        if ("-".equals(encoded)) {
+            return;
+        }
+        int separator = encoded.indexOf(';');
+        max = Math.max(max, Long.parseLong(encoded.substring(0, separator)));
+        for (String bucket : encoded.substring(separator + 1).split(",")) {
+            int colon = bucket.indexOf(':');
+            long count = Long.parseLong(bucket.substring(colon + 1));
+            counts[Integer.parseInt(bucket.substring(0, colon))] += count;
+            totalCount += count;
+        }
+    }
+
+    private static int bucketIndexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,123 @@
+package com.luciopaiva;
+
+import com.luciopaiva.Constants.IdleStrategy;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides how the main loop waits for channels to become ready.
+ *
+ * Blocking in select() is cheap on CPU, but the thread only wakes up when the kernel gets around to it, be it because
+ * a channel is ready or because the timeout (set to the loop's next deadline) expired. The other strategies never
+ * block in the kernel: they poll with selectNow() and differ only in what they do when there's nothing to select,
+ * trading CPU for wakeup latency.
+ */
+interface Idler {
+
+    /**
+     * @param nanosToNextDeadline how long until the loop has timed work to do (e.g., the next send)
+     * @return the number of keys selected, just like Selector.select()
+     */
+    int select(Selector selector, long nanosToNextDeadline) throws IOException;
+
+    static Idler create(IdleStrategy strategy, int selectTimeoutInMillis) {
+        switch (strategy) {
+            case BusySpin:
+                return new BusySpinning();
+            case SpinYield:
+                return new SpinYielding();
+            case SpinPark:
+                return new SpinParking(selectTimeoutInMillis * 1_000_000L);
+            default:
+                return new Blocking(selectTimeoutInMillis);
+        }
+    }
+
+    /** Blocks until something is ready or until the next deadline, but never longer than the select() timeout. */
+    class Blocking implements Idler {
+
+        private final int selectTimeoutInMillis;
+
+        Blocking(int selectTimeoutInMillis) {
+            this.selectTimeoutInMillis = selectTimeoutInMillis;
+        }
+
+        @Override
+        public int select(Selector selector, long nanosToNextDeadline) throws IOException {
+            if (nanosToNextDeadline <= 0) {
+                return selector.selectNow();
+            }
+            // round up, otherwise the loop would wake up just before the deadline and spin until it's due
+            long millisToNextDeadline = nanosToNextDeadline / 1_000_000 + (nanosToNextDeadline % 1_000_000 > 0 ? 1 : 0);
+            return selector.select(Math.min(selectTimeoutInMillis, millisToNextDeadline));
+        }
+    }
+
+    /** Burns a whole core, but notices ready channels and due sends as soon as possible. */
+    class BusySpinning implements Idler {
+
+        @Override
+        public int select(Selector selector, long nanosToNextDeadline) throws IOException {
+            return selector.selectNow();
+        }
+    }
+
+    /** Spins for a while and then starts yielding, so other threads get a chance when there's nothing going on. */
+    class SpinYielding implements Idler {
+
+        private int idleCount = 0;
+
+        @Override
+        public int select(Selector selector, long nanosToNextDeadline) throws IOException {
+            int selected = selector.selectNow();
+            if (selected > 0) {
+                idleCount = 0;
+            } else if (idleCount < Constants.IDLE_MAX_SPINS) {
+                idleCount++;
+            } else {
+                Thread.yield();
+            }
+            return selected;
+        }
+    }
+
+    /**
+     * Spins, then yields, then parks for exponentially longer periods. The park period is capped by the select()
+     * timeout and never goes past the loop's next deadline, so timed work is not delayed by the backoff.
+     */
+    class SpinParking implements Idler {
+
+        private final long maxParkPeriodInNanos;
+
+        private int idleCount = 0;
+        private long parkPeriodInNanos = Constants.IDLE_MIN_PARK_PERIOD_IN_NANOS;
+
+        SpinParking(long maxParkPeriodInNanos) {
+            this.maxParkPeriodInNanos = maxParkPeriodInNanos;
+        }
+
+        @Override
+        public int select(Selector selector, long nanosToNextDeadline) throws IOException {
+            int selected = selector.selectNow();
+            if (selected > 0) {
+                idleCount = 0;
+                parkPeriodInNanos = Constants.IDLE_MIN_PARK_PERIOD_IN_NANOS;
+            } else {
+                if (idleCount < Constants.IDLE_MAX_SPINS) {
+                    idleCount++;
+                } else if (idleCount < Constants.IDLE_MAX_SPINS + Constants.IDLE_MAX_YIELDS) {
+                    idleCount++;
+                    Thread.yield();
+                } else {
+                    if (nanosToNextDeadline > 0) {
+                        LockSupport.parkNanos(Math.min(parkPeriodInNanos, nanosToNextDeadline));
+                    }
+                    parkPeriodInNanos = Math.min(parkPeriodInNanos << 1, maxParkPeriodInNanos);
+                }
+            }
+            return selected;
+        }
+    }
+}
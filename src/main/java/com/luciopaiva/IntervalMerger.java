@@ -0,0 +1,82 @@
+package com.luciopaiva;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Merges the metrics workers report for each interval, handing intervals out in order once complete.
+ *
+ * An interval is complete when every worker still connected has reported it. Workers report intervals in order, so
+ * it's enough to know the last interval each one reported. A worker that leaves stops being waited for, but whatever it
+ * reported before leaving still counts. Once handed out, an interval is never reopened: late reports for it are
+ * ignored.
+ */
+class IntervalMerger {
+
+    static class IntervalMetrics {
+        long interval;
+        int reportCount;
+        long clients;
+        long waiting;
+        long connectionSucceeded;
+        long connectionFailed;
+        long bytesReceived;
+        final Histogram connectTimesInMicros = new Histogram();
+    }
+
+    private final Consumer<IntervalMetrics> onComplete;
+    /** metrics for each report interval, waiting for all workers to chip in */
+    private final TreeMap<Long, IntervalMetrics> pendingIntervals = new TreeMap<>();
+    /** last interval reported by each worker still connected, by worker index */
+    private final Map<Integer, Long> lastIntervalByWorker = new HashMap<>();
+    private long lastCompleteInterval = -1;
+
+    IntervalMerger(Consumer<IntervalMetrics> onComplete) {
+        this.onComplete = onComplete;
+    }
+
+    void addWorker(int worker) {
+        lastIntervalByWorker.put(worker, -1L);
+    }
+
+    /** Stops waiting for the given worker and hands out intervals that were waiting only for it. */
+    void removeWorker(int worker) {
+        lastIntervalByWorker.remove(worker);
+        completeIntervals();
+    }
+
+    /** @param tokens a METRICS message (see ControlProtocol) */
+    void add(int worker, String[] tokens) {
+        long interval = Long.parseLong(tokens[1]);
+        if (interval <= lastCompleteInterval || !lastIntervalByWorker.containsKey(worker)) {
+            return;
+        }
+        lastIntervalByWorker.put(worker, Math.max(interval, lastIntervalByWorker.get(worker)));
+
+        IntervalMetrics metrics = pendingIntervals.computeIfAbsent(interval, i -> new IntervalMetrics());
+        metrics.interval = interval;
+        metrics.reportCount++;
+        metrics.clients += Long.parseLong(tokens[2]);
+        metrics.waiting += Long.parseLong(tokens[3]);
+        metrics.connectionSucceeded += Long.parseLong(tokens[4]);
+        metrics.connectionFailed += Long.parseLong(tokens[5]);
+        metrics.bytesReceived += Long.parseLong(tokens[6]);
+        metrics.connectTimesInMicros.addEncoded(tokens[7]);
+
+        completeIntervals();
+    }
+
+    private void completeIntervals() {
+        long lastReportedByAll = Long.MAX_VALUE;
+        for (long lastInterval : lastIntervalByWorker.values()) {
+            lastReportedByAll = Math.min(lastReportedByAll, lastInterval);
+        }
+        while (!pendingIntervals.isEmpty() && pendingIntervals.firstKey() <= lastReportedByAll) {
+            IntervalMetrics metrics = pendingIntervals.pollFirstEntry().getValue();
+            lastCompleteInterval = metrics.interval;
+            onComplete.accept(metrics);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.luciopaiva;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Running totals published by each listener thread when the server runs with multiple listeners, so the main thread
+ * can aggregate and report them. Each listener only writes to its own slots, so there's no need for atomic increments:
+ * a lazy set is enough to make values visible to the reporting thread.
+ *
+ * Listeners publish on every loop pass, so their slots are padded apart: otherwise, neighbouring listeners would be
+ * writing to the same cache lines all the time.
+ */
+class ListenerStats {
+
+    static final int ACCEPTS = 0;
+    static final int CLIENTS = 1;
+    static final int SUCCESSFUL_SENDS = 2;
+    static final int PARTIAL_SENDS = 3;
+    static final int FAILED_SENDS = 4;
+    static final int BYTES_RECEIVED = 5;
+    static final int BYTES_SENT = 6;
+    static final int SENDING_TIME_IN_NANOS = 7;
+    static final int CPU_TIME_IN_NANOS = 8;
+    static final int SEND_LAG_SUM_IN_NANOS = 9;
+    static final int SEND_LAG_COUNT = 10;
+    /** two slots, used in alternate report intervals (see setSendLagMax()) */
+    private static final int SEND_LAG_MAX_IN_NANOS = 11;
+    static final int COMPRESSION_TIME_IN_NANOS = 13;
+    static final int RAW_PAYLOAD_BYTES = 14;
+    static final int COMPRESSED_PAYLOAD_BYTES = 15;
+    private static final int NUMBER_OF_FIELDS = 16;
+
+    /** two cache lines, since CPUs may prefetch lines in pairs */
+    private static final int PADDING = 128 / Long.BYTES;
+    private static final int STRIDE = NUMBER_OF_FIELDS + PADDING;
+
+    private final int numberOfListeners;
+    private final AtomicLongArray values;
+
+    /** incremented by the reporting thread whenever a report interval ends */
+    private volatile long reportEpoch = 0;
+
+    ListenerStats(int numberOfListeners) {
+        this.numberOfListeners = numberOfListeners;
+        values = new AtomicLongArray(PADDING + numberOfListeners * STRIDE);
+    }
+
+    int getNumberOfListeners() {
+        return numberOfListeners;
+    }
+
+    private static int indexOf(int listener, int field) {
+        return PADDING + listener * STRIDE + field;
+    }
+
+    /** To be called only by the thread owning the listener. */
+    void add(int listener, int field, long delta) {
+        if (delta != 0) {
+            int index = indexOf(listener, field);
+            values.lazySet(index, values.get(index) + delta);
+        }
+    }
+
+    /** To be called only by the thread owning the listener. */
+    void set(int listener, int field, long value) {
+        int index = indexOf(listener, field);
+        if (values.get(index) != value) {
+            values.lazySet(index, value);
+        }
+    }
+
+    long get(int listener, int field) {
+        return values.get(indexOf(listener, field));
+    }
+
+    /** @return the sum of the given field across all listeners */
+    long sum(int field) {
+        long sum = 0;
+        for (int listener = 0; listener < numberOfListeners; listener++) {
+            sum += get(listener, field);
+        }
+        return sum;
+    }
+
+    long getReportEpoch() {
+        return reportEpoch;
+    }
+
+    /**
+     * A max can't be published as a running total, so each listener publishes the max for the current report epoch.
+     * Epochs alternate between two slots, so a listener starting over in a new epoch doesn't clear the value the
+     * reporting thread is about to read. To be called only by the thread owning the listener.
+     */
+    void setSendLagMax(int listener, long epoch, long lagInNanos) {
+        set(listener, SEND_LAG_MAX_IN_NANOS + (int) (epoch & 1), lagInNanos);
+    }
+
+    /**
+     * To be called by the reporting thread only: ends the current report epoch.
+     *
+     * @return the max send lag across all listeners in the epoch that just ended
+     */
+    long endReportEpoch() {
+        long epoch = reportEpoch;
+        reportEpoch = epoch + 1;
+        long max = 0;
+        for (int listener = 0; listener < numberOfListeners; listener++) {
+            max = Math.max(max, get(listener, SEND_LAG_MAX_IN_NANOS + (int) (epoch & 1)));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,133 @@
+package com.luciopaiva;
+
+/**
+ * Periodically aggregates metrics published by all listeners and prints them, along with how many connections each
+ * listener accepted and how unevenly the kernel spread them (imbalance is how far the busiest listener is from the
+ * average, in percent).
+ */
+class ListenerStatsReporter {
+
+    private static final int[] SUMMED_FIELDS = {
+            ListenerStats.SUCCESSFUL_SENDS,
+            ListenerStats.PARTIAL_SENDS,
+            ListenerStats.FAILED_SENDS,
+            ListenerStats.BYTES_RECEIVED,
+            ListenerStats.BYTES_SENT,
+            ListenerStats.CPU_TIME_IN_NANOS,
+            ListenerStats.SEND_LAG_SUM_IN_NANOS,
+            ListenerStats.SEND_LAG_COUNT,
+            ListenerStats.COMPRESSION_TIME_IN_NANOS,
+            ListenerStats.RAW_PAYLOAD_BYTES,
+            ListenerStats.COMPRESSED_PAYLOAD_BYTES,
+    };
+
+    private final ListenerStats listenerStats;
+    private final long metricsReportPeriodInMillis;
+    private final MetricsReporter reporter;
+    private final int numberOfListeners;
+    private final boolean isCompressing;
+
+    private final long[] previousSums = new long[SUMMED_FIELDS.length];
+    private final long[] previousAccepts;
+    private final long[] previousSendingTimes;
+
+    ListenerStatsReporter(ListenerStats listenerStats, long metricsReportPeriodInMillis, boolean isCompressing) {
+        this.listenerStats = listenerStats;
+        this.metricsReportPeriodInMillis = metricsReportPeriodInMillis;
+        this.isCompressing = isCompressing;
+        numberOfListeners = listenerStats.getNumberOfListeners();
+        previousAccepts = new long[numberOfListeners];
+        previousSendingTimes = new long[numberOfListeners];
+
+        reporter = new MetricsReporter();
+        reporter.addField("LF", 7);
+        reporter.addField("clients", 7);
+        reporter.addField("sendcnt", 7);
+        reporter.addField("partial", 7);
+        reporter.addField("failed", 7);
+        reporter.addField("in", 7);
+        reporter.addField("out", 7);
+        reporter.addField("cpu", 7);
+        reporter.addField("lag", 7);
+        reporter.addField("lagmax", 7);
+        if (isCompressing) {
+            reporter.addField("ziptime", 7);
+            reporter.addField("ratio", 7);
+        }
+        reporter.addField("accepts", 7);
+        reporter.addField("imbal", 7);
+        for (int i = 0; i < numberOfListeners; i++) {
+            reporter.addField("acc" + i, 7);
+        }
+    }
+
+    void run() {
+        long lastTime = System.nanoTime();
+
+        while (true) {
+            try {
+                Thread.sleep(metricsReportPeriodInMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            report(now - lastTime);
+            lastTime = now;
+        }
+    }
+
+    private void report(long elapsedInNanos) {
+        // the load factor that matters is the one of the busiest listener
+        long maxSendingTime = 0;
+        long totalAccepts = 0;
+        long maxAccepts = 0;
+        for (int i = 0; i < numberOfListeners; i++) {
+            long sendingTime = listenerStats.get(i, ListenerStats.SENDING_TIME_IN_NANOS);
+            maxSendingTime = Math.max(maxSendingTime, sendingTime - previousSendingTimes[i]);
+            previousSendingTimes[i] = sendingTime;
+
+            long accepts = listenerStats.get(i, ListenerStats.ACCEPTS) - previousAccepts[i];
+            totalAccepts += accepts;
+            maxAccepts = Math.max(maxAccepts, accepts);
+        }
+        long imbalance = totalAccepts > 0 ? 100 * maxAccepts * numberOfListeners / totalAccepts - 100 : 0;
+        long sendLagMaxInNanos = listenerStats.endReportEpoch();
+
+        reporter.beginRow();
+        reporter.putLong(100 * maxSendingTime / elapsedInNanos);
+        reporter.putLong(listenerStats.sum(ListenerStats.CLIENTS));
+        reporter.putLong(nextDelta(0));
+        reporter.putLong(nextDelta(1));
+        reporter.putLong(nextDelta(2));
+        reporter.putBytes(nextDelta(3));
+        reporter.putBytes(nextDelta(4));
+        reporter.putLong(100 * nextDelta(5) / elapsedInNanos);  // may go past 100%, as listeners run in parallel
+        long sendLagSumInNanos = nextDelta(6);
+        long sendLagCount = nextDelta(7);
+        reporter.putLong(sendLagCount > 0 ? sendLagSumInNanos / sendLagCount / 1000 : 0);
+        reporter.putLong(sendLagMaxInNanos / 1000);
+        long compressionTimeInNanos = nextDelta(8);
+        long rawPayloadBytes = nextDelta(9);
+        long compressedPayloadBytes = nextDelta(10);
+        if (isCompressing) {
+            reporter.putLong(compressionTimeInNanos / 1000);
+            reporter.putLong(rawPayloadBytes > 0 ? 100 * compressedPayloadBytes / rawPayloadBytes : 100);
+        }
+        reporter.putLong(totalAccepts);
+        reporter.putLong(imbalance);
+        for (int i = 0; i < numberOfListeners; i++) {
+            long accepts = listenerStats.get(i, ListenerStats.ACCEPTS);
+            reporter.putLong(accepts - previousAccepts[i]);
+            previousAccepts[i] = accepts;
+        }
+        reporter.endRow();
+    }
+
+    /** @return how much the given summed field grew since the last report */
+    private long nextDelta(int summedFieldIndex) {
+        long sum = listenerStats.sum(SUMMED_FIELDS[summedFieldIndex]);
+        long delta = sum - previousSums[summedFieldIndex];
+        previousSums[summedFieldIndex] = sum;
+        return delta;
+    }
+}
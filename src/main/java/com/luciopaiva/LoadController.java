@@ -0,0 +1,286 @@
+package com.luciopaiva;
+
+import com.luciopaiva.arguments.ControllerArguments;
+import com.luciopaiva.control.ControlProtocol;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Coordinates several TcpClients worker processes, so a single command can generate more load than one JVM or one
+ * machine would be able to. It spawns local workers (and/or waits for workers started elsewhere), pushes the same
+ * client configuration to all of them, starts them at the same time and merges their metrics into a single report.
+ *
+ * Connect times are merged as histograms, so the percentiles reported are the actual global ones.
+ */
+public class LoadController {
+
+    private final ControllerArguments arguments;
+    private final Selector selector;
+    private final ServerSocketChannel controlServerSocketChannel;
+    private final MetricsReporter reporter;
+    private final List<Process> localWorkers = new ArrayList<>();
+    private final IntervalMerger intervalMerger = new IntervalMerger(this::reportInterval);
+    private final int expectedWorkers;
+
+    private int helloCount = 0;
+    private int readyCount = 0;
+    private int activeWorkers = 0;
+    private boolean hasStarted = false;
+
+    private static class Worker {
+        final int index;
+        final SocketChannel channel;
+        final ByteBuffer readBuffer = ByteBuffer.allocate(Constants.CONTROL_BUFFER_SIZE_IN_BYTES);
+        final StringBuilder line = new StringBuilder();
+
+        Worker(int index, SocketChannel channel) {
+            this.index = index;
+            this.channel = channel;
+        }
+    }
+
+    private LoadController(ControllerArguments arguments) throws IOException {
+        this.arguments = arguments;
+        expectedWorkers = arguments.numberOfLocalWorkers + arguments.numberOfExternalWorkers;
+
+        reporter = new MetricsReporter();
+        reporter.addField("workers", 7);
+        reporter.addField("clients", 7);
+        reporter.addField("waiting", 7);
+        reporter.addField("connect", 7);
+        reporter.addField("confail", 7);
+        reporter.addField("in", 7);
+        reporter.addField("conp50", 7);
+        reporter.addField("conp99", 7);
+        reporter.addField("conmax", 7);
+
+        selector = Selector.open();
+        controlServerSocketChannel = ServerSocketChannel.open();
+        controlServerSocketChannel.configureBlocking(false);
+        controlServerSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    private void run() throws IOException {
+        controlServerSocketChannel.bind(new InetSocketAddress(arguments.controlPort));
+        System.out.println(String.format("Controller listening at %s. Waiting for %d worker(s)...",
+                Utils.getAddressStr(controlServerSocketChannel.getLocalAddress()), expectedWorkers));
+
+        spawnLocalWorkers();
+
+        try {
+            while (!hasStarted || activeWorkers > 0) {
+                if (selector.select(Constants.SELECT_TIMEOUT_IN_MILLIS) > 0) {
+                    for (SelectionKey selectionKey : selector.selectedKeys()) {
+                        handleSelectionKey(selectionKey);
+                    }
+                    selector.selectedKeys().clear();
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            System.out.println("Selector was closed. Terminating...");
+        }
+
+        System.out.println("All workers are done. Terminating...");
+    }
+
+    private void spawnLocalWorkers() throws IOException {
+        if (arguments.numberOfLocalWorkers == 0) {
+            return;
+        }
+
+        // workers run with the same JVM options and classpath as the controller
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(TcpClients.class.getName());
+        command.add("--controller");
+        command.add("127.0.0.1:" + arguments.controlPort);
+
+        ProcessBuilder processBuilder = new ProcessBuilder(command).inheritIO();
+        for (int i = 0; i < arguments.numberOfLocalWorkers; i++) {
+            localWorkers.add(processBuilder.start());
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> localWorkers.forEach(Process::destroy)));
+    }
+
+    private void handleSelectionKey(SelectionKey selectionKey) {
+        if (!selectionKey.isValid()) {
+            return;
+        }
+        try {
+            if (selectionKey.isAcceptable()) {
+                acceptWorker();
+            } else if (selectionKey.isReadable()) {
+                readFromWorker(selectionKey);
+            }
+        } catch (IOException e) {
+            if (arguments.debug) {
+                System.err.println("Error talking to worker: " + e.getMessage());
+            }
+            dropWorker(selectionKey);
+        }
+    }
+
+    private void acceptWorker() throws IOException {
+        SocketChannel socketChannel = controlServerSocketChannel.accept();
+        if (socketChannel == null) {
+            return;
+        }
+        if (helloCount >= expectedWorkers) {
+            System.err.println("Unexpected worker connected from " + Utils.getAddressStr(
+                    socketChannel.getRemoteAddress()) + ". Dropping it...");
+            socketChannel.close();
+            return;
+        }
+        socketChannel.configureBlocking(false);
+        Worker worker = new Worker(helloCount++, socketChannel);
+        socketChannel.register(selector, SelectionKey.OP_READ, worker);
+        intervalMerger.addWorker(worker.index);
+        activeWorkers++;
+    }
+
+    private void readFromWorker(SelectionKey selectionKey) throws IOException {
+        Worker worker = (Worker) selectionKey.attachment();
+
+        while (true) {
+            worker.readBuffer.clear();
+            int read = worker.channel.read(worker.readBuffer);
+            if (read < 0) {
+                dropWorker(selectionKey);
+                return;
+            } else if (read == 0) {
+                return;
+            }
+
+            worker.readBuffer.flip();
+            while (worker.readBuffer.hasRemaining()) {
+                char c = (char) worker.readBuffer.get();
+                if (c == '\n') {
+                    String[] tokens = worker.line.toString().split(ControlProtocol.TOKEN_SEPARATOR);
+                    worker.line.setLength(0);
+                    if (!handleMessage(worker, tokens)) {
+                        dropWorker(selectionKey);
+                        return;
+                    }
+                } else {
+                    worker.line.append(c);
+                }
+            }
+        }
+    }
+
+    /** @return false if the worker is gone */
+    private boolean handleMessage(Worker worker, String[] tokens) throws IOException {
+        if (arguments.debug) {
+            System.out.println(String.format("Worker %d: %s", worker.index, String.join(" ", tokens)));
+        }
+
+        switch (tokens[0]) {
+            case ControlProtocol.HELLO:
+                sendConfig(worker);
+                break;
+            case ControlProtocol.READY:
+                readyCount++;
+                if (readyCount == expectedWorkers) {
+                    startWorkers();
+                }
+                break;
+            case ControlProtocol.METRICS:
+                intervalMerger.add(worker.index, tokens);
+                break;
+            case ControlProtocol.DONE:
+                return false;
+            default:
+                System.err.println(String.format("Unknown message from worker %d: %s", worker.index, tokens[0]));
+        }
+        return true;
+    }
+
+    private void sendConfig(Worker worker) throws IOException {
+        List<String> config = new ArrayList<>(Arrays.asList(arguments.workerArguments));
+        if (arguments.sourceAddresses != null) {
+            config.add("--bind");
+            config.add(arguments.sourceAddresses[worker.index % arguments.sourceAddresses.length]);
+        }
+        send(worker, ControlProtocol.CONFIG + ControlProtocol.TOKEN_SEPARATOR +
+                String.join(ControlProtocol.TOKEN_SEPARATOR, config));
+    }
+
+    private void startWorkers() throws IOException {
+        long startTime = System.currentTimeMillis() + Constants.CONTROLLER_START_DELAY_IN_MILLIS;
+        for (SelectionKey selectionKey : selector.keys()) {
+            if (selectionKey.attachment() instanceof Worker && selectionKey.isValid()) {
+                send((Worker) selectionKey.attachment(),
+                        ControlProtocol.START + ControlProtocol.TOKEN_SEPARATOR + startTime);
+            }
+        }
+        hasStarted = true;
+        System.out.println(String.format("All %d workers ready. Starting...", expectedWorkers));
+    }
+
+    private void send(Worker worker, String message) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((message + '\n').getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            worker.channel.write(buffer);
+        }
+    }
+
+    /** Prints an interval once all workers have reported it (see IntervalMerger). */
+    private void reportInterval(IntervalMerger.IntervalMetrics metrics) {
+        reporter.beginRow();
+        reporter.putLong(metrics.reportCount);
+        reporter.putLong(metrics.clients);
+        reporter.putLong(metrics.waiting);
+        reporter.putLong(metrics.connectionSucceeded);
+        reporter.putLong(metrics.connectionFailed);
+        reporter.putBytes(metrics.bytesReceived);
+        reporter.putLong(metrics.connectTimesInMicros.getValueAtPercentile(50));
+        reporter.putLong(metrics.connectTimesInMicros.getValueAtPercentile(99));
+        reporter.putLong(metrics.connectTimesInMicros.getMax());
+        reporter.endRow();
+    }
+
+    private void dropWorker(SelectionKey selectionKey) {
+        Worker worker = (Worker) selectionKey.attachment();
+        try {
+            worker.channel.close();
+        } catch (IOException ignored) {
+        } finally {
+            selectionKey.cancel();
+            activeWorkers--;
+        }
+        System.out.println(String.format("Worker %d is gone. Workers still active: %d", worker.index, activeWorkers));
+
+        if (!hasStarted) {
+            System.err.println("A worker left before the test started. Aborting...");
+            localWorkers.forEach(Process::destroy);
+            System.exit(1);
+        }
+
+        // intervals that were waiting only for this worker can be reported now
+        intervalMerger.removeWorker(worker.index);
+    }
+
+    public static void main(String ...args) throws IOException {
+        ControllerArguments arguments = ControllerArguments.parse(args);
+
+        LoadController controller = new LoadController(arguments);
+        controller.run();
+    }
+}
@@ -1,68 +1,128 @@
 package com.luciopaiva;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringJoiner;
 
+/**
+ * Prints metrics as a table. Rows are written field by field into a reused buffer, so reporting produces no garbage:
+ *
+ *     reporter.beginRow();
+ *     reporter.putLong(clients);
+ *     reporter.putBytes(bytesSent);
+ *     reporter.endRow();
+ */
 class MetricsReporter {
 
     private static final int HEADER_PERIOD_IN_REPORTS = 10;
+    private static final String FIELD_SEPARATOR = "|";
 
     private final List<String> fieldNames;
     private final List<Integer> fieldSizes;
-    private final List<String> fieldTypes;
+    private final StringBuilder row;
+    private final PrintStream out;
 
-    private String metricsHeader;
-    private String metricsRow;
+    private byte[] metricsHeader;
+    private byte[] rowBytes;
+    private int[] compiledFieldSizes;
     private int countdownToHeader = 0;
+    private int currentField = 0;
     private boolean mustCompileHeader = true;
 
     MetricsReporter() {
         fieldNames = new ArrayList<>();
         fieldSizes = new ArrayList<>();
-        fieldTypes = new ArrayList<>();
+        row = new StringBuilder(256);
+        out = System.out;
     }
 
-    void addField(String name, int size, String format) {
+    void addField(String name, int size) {
         fieldNames.add(name);
         fieldSizes.add(size);
-        fieldTypes.add(format);
 
         mustCompileHeader = true;
     }
 
-    void report(Object ...args) {
-        if (args.length != fieldNames.size()) {
-            throw new IllegalArgumentException(String.format("Expected %d arguments, received %d",
-                    fieldNames.size(), args.length));
-        }
-
+    void beginRow() {
         if (mustCompileHeader) {
             compileHeader();
         }
 
+        row.setLength(0);
+        currentField = 0;
+    }
+
+    void putLong(long value) {
+        int start = beginField();
+        row.append(value);
+        endField(start);
+    }
+
+    /** Same as putLong(), but abbreviates big values using k and M suffixes. */
+    void putBytes(long bytes) {
+        int start = beginField();
+        Utils.appendBytes(row, bytes);
+        endField(start);
+    }
+
+    void endRow() {
+        if (currentField != compiledFieldSizes.length) {
+            throw new IllegalStateException(String.format("Expected %d fields, received %d",
+                    compiledFieldSizes.length, currentField));
+        }
+        row.append('\n');
+
         if (countdownToHeader == 0) {
-            System.out.println(metricsHeader);
+            out.write(metricsHeader, 0, metricsHeader.length);
             countdownToHeader = HEADER_PERIOD_IN_REPORTS;
         }
         countdownToHeader--;
 
-        System.out.println(String.format(metricsRow, args));
+        int length = row.length();
+        if (rowBytes.length < length) {
+            rowBytes = new byte[length];
+        }
+        for (int i = 0; i < length; i++) {
+            rowBytes[i] = (byte) row.charAt(i);  // rows are plain ASCII
+        }
+        out.write(rowBytes, 0, length);
+    }
+
+    private int beginField() {
+        if (currentField > 0) {
+            row.append(FIELD_SEPARATOR);
+        }
+        row.append(' ');
+        return row.length();
+    }
+
+    private void endField(int start) {
+        // right-align value within field
+        int size = compiledFieldSizes[currentField];
+        while (row.length() - start < size) {
+            row.insert(start, ' ');
+        }
+        row.append(' ');
+        currentField++;
     }
 
     private void compileHeader() {
-        StringJoiner headerJoiner = new StringJoiner("|");
-        StringJoiner rowJoiner = new StringJoiner("|");
+        StringJoiner headerJoiner = new StringJoiner(FIELD_SEPARATOR);
+        compiledFieldSizes = new int[fieldNames.size()];
         int hrSize = 0;
         for (int i = 0; i < fieldNames.size(); i++) {
+            compiledFieldSizes[i] = fieldSizes.get(i);
             headerJoiner.add(String.format(String.format(" %%%ds ", fieldSizes.get(i)), fieldNames.get(i)));
-            rowJoiner.add(String.format(" %%%d%s ", fieldSizes.get(i), fieldTypes.get(i)));
             hrSize += fieldSizes.get(i) + 2;  // one leading + one trailing space char
         }
         hrSize += (fieldNames.size() - 1);  // field separators
         String hr = new String(new char[hrSize]).replace('\0', '-');
-        metricsHeader = hr + '\n' + headerJoiner.toString() + '\n' + hr;
-        metricsRow = rowJoiner.toString();
+        String header = hr + '\n' + headerJoiner.toString() + '\n' + hr + '\n';
+        metricsHeader = header.getBytes();
+        // values may not fit their fields, so leave room for rows wider than the header
+        rowBytes = new byte[2 * (hrSize + 1)];
+        row.ensureCapacity(rowBytes.length);
         mustCompileHeader = false;
     }
 }
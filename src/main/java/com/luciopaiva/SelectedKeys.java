@@ -0,0 +1,157 @@
+package com.luciopaiva;
+
+import java.lang.reflect.Field;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Hands selected keys over to a handler without producing garbage.
+ *
+ * The JDK selector keeps its selected keys in a HashSet, so walking it requires a new iterator every pass of the main
+ * loop. Here we replace that set (via reflection) with a pre-sized array, which can be walked by index. If the JDK
+ * won't let us in (on Java 9+ it requires `--add-opens java.base/sun.nio.ch=ALL-UNNAMED`), we fall back to the
+ * regular set, which works just as well but allocates.
+ */
+class SelectedKeys {
+
+    private final Selector selector;
+    private final Consumer<SelectionKey> handler;
+    private final ArrayKeySet keys;
+
+    SelectedKeys(Selector selector, Consumer<SelectionKey> handler) {
+        this.selector = selector;
+        this.handler = handler;
+        this.keys = install(selector);
+
+        if (keys == null) {
+            System.err.println("Could not install array-backed selected-key set; main loop will produce garbage. " +
+                    "On Java 9+, run with --add-opens java.base/sun.nio.ch=ALL-UNNAMED to fix it.");
+        }
+    }
+
+    /** Calls the handler for every key selected by the last select() and then clears the selected set. */
+    void dispatch() {
+        if (keys != null) {
+            // the handler may not add keys to the set, so it is safe to cache its size
+            int size = keys.size;
+            for (int i = 0; i < size; i++) {
+                handler.accept(keys.keys[i]);
+            }
+            keys.reset();
+        } else {
+            Set<SelectionKey> selectedKeys = selector.selectedKeys();
+            for (SelectionKey selectionKey : selectedKeys) {
+                handler.accept(selectionKey);
+            }
+            selectedKeys.clear();
+        }
+    }
+
+    private static ArrayKeySet install(Selector selector) {
+        try {
+            Class<?> selectorImplClass = Class.forName("sun.nio.ch.SelectorImpl", false,
+                    ClassLoader.getSystemClassLoader());
+            if (!selectorImplClass.isAssignableFrom(selector.getClass())) {
+                return null;
+            }
+
+            Field selectedKeysField = selectorImplClass.getDeclaredField("selectedKeys");
+            Field publicSelectedKeysField = selectorImplClass.getDeclaredField("publicSelectedKeys");
+            selectedKeysField.setAccessible(true);
+            publicSelectedKeysField.setAccessible(true);
+
+            ArrayKeySet keySet = new ArrayKeySet(Constants.SELECTED_KEYS_INITIAL_CAPACITY);
+            selectedKeysField.set(selector, keySet);
+            publicSelectedKeysField.set(selector, keySet);
+            return keySet;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // RuntimeException covers InaccessibleObjectException, which only exists from Java 9 on
+            return null;
+        }
+    }
+
+    /**
+     * Append-only set used by the selector to report ready keys. The selector never adds the same key twice between
+     * two calls to reset(), so there's no need to check for duplicates - that's why contains() always says no.
+     */
+    private static final class ArrayKeySet extends AbstractSet<SelectionKey> {
+
+        private SelectionKey[] keys;
+        private int size;
+
+        ArrayKeySet(int initialCapacity) {
+            keys = new SelectionKey[initialCapacity];
+        }
+
+        @Override
+        public boolean add(SelectionKey selectionKey) {
+            if (selectionKey == null) {
+                return false;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size << 1);
+            }
+            keys[size++] = selectionKey;
+            return true;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            // only called by the selector when deregistering cancelled keys, which happens before new keys are added
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == o) {
+                    System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+                    keys[--size] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            reset();
+        }
+
+        void reset() {
+            Arrays.fill(keys, 0, size, null);
+            size = 0;
+        }
+
+        @Override
+        public Iterator<SelectionKey> iterator() {
+            return new Iterator<SelectionKey>() {
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return index < size;
+                }
+
+                @Override
+                public SelectionKey next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return keys[index++];
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.luciopaiva;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Socket options to apply to every connection, plus the listen backlog.
+ *
+ * Options are given as key=value pairs (e.g., sndbuf=65536). Extended options (TCP_QUICKACK, TCP_KEEPIDLE, etc.) are
+ * looked up by name among the ones the JDK supports, since jdk.net.ExtendedSocketOptions only has them from Java 10
+ * or 11 on and only on some platforms; options that are not available are reported and skipped.
+ */
+public class SocketProfile {
+
+    public static final String BACKLOG = "backlog";
+    private static final String LINGER = "linger";
+
+    private static final Map<String, String> optionNameByKey = new LinkedHashMap<>();
+    static {
+        optionNameByKey.put("sndbuf", "SO_SNDBUF");
+        optionNameByKey.put("rcvbuf", "SO_RCVBUF");
+        optionNameByKey.put("nodelay", "TCP_NODELAY");
+        optionNameByKey.put(LINGER, "SO_LINGER");
+        optionNameByKey.put("keepalive", "SO_KEEPALIVE");
+        optionNameByKey.put("keepidle", "TCP_KEEPIDLE");
+        optionNameByKey.put("keepinterval", "TCP_KEEPINTERVAL");
+        optionNameByKey.put("keepcount", "TCP_KEEPCOUNT");
+        optionNameByKey.put("quickack", "TCP_QUICKACK");
+    }
+
+    private static final Set<String> booleanKeys = new HashSet<>(Arrays.asList("nodelay", "keepalive", "quickack"));
+
+    private static final Map<String, Map<String, String>> builtInProfiles = new HashMap<>();
+    static {
+        Map<String, String> lowLatency = new LinkedHashMap<>();
+        lowLatency.put("nodelay", "true");
+        builtInProfiles.put("low-latency", lowLatency);
+
+        Map<String, String> smallBuffers = new LinkedHashMap<>();
+        smallBuffers.put("sndbuf", "16384");
+        smallBuffers.put("rcvbuf", "16384");
+        builtInProfiles.put("small-buffers", smallBuffers);
+
+        Map<String, String> largeBuffers = new LinkedHashMap<>();
+        largeBuffers.put("sndbuf", "4194304");
+        largeBuffers.put("rcvbuf", "4194304");
+        largeBuffers.put(BACKLOG, "4096");
+        builtInProfiles.put("large-buffers", largeBuffers);
+    }
+
+    private final List<SocketOption<?>> options = new ArrayList<>();
+    private final List<Object> values = new ArrayList<>();
+    private final int backlog;
+
+    /** @param settings as key=value pairs, validated with isKnownKey() and checkValue() */
+    SocketProfile(Map<String, String> settings) throws IOException {
+        int backlog = 0;  // let the JDK decide
+        try (SocketChannel probe = SocketChannel.open()) {
+            for (Map.Entry<String, String> setting : settings.entrySet()) {
+                if (BACKLOG.equals(setting.getKey())) {
+                    backlog = Integer.parseInt(setting.getValue());
+                    continue;
+                }
+                String optionName = optionNameByKey.get(setting.getKey());
+                SocketOption<?> option = Utils.findSocketOption(probe, optionName);
+                if (option == null) {
+                    System.err.println(String.format("Socket option %s is not supported here. Ignoring it...",
+                            optionName));
+                    continue;
+                }
+                options.add(option);
+                values.add(parseValue(option, setting.getValue()));
+            }
+        }
+        this.backlog = backlog;
+    }
+
+    public static boolean isKnownKey(String key) {
+        return BACKLOG.equals(key) || optionNameByKey.containsKey(key);
+    }
+
+    /**
+     * On/off options take true or false, all others take integers. SO_LINGER only takes zero: with a timeout, its
+     * behavior is undefined for non-blocking sockets, which is all this project uses.
+     *
+     * @return why the value is invalid for the given key, or null if it's valid
+     */
+    public static String checkValue(String key, String value) {
+        if (booleanKeys.contains(key)) {
+            return "true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value) ? null : "expected true or false";
+        }
+        try {
+            int number = Integer.parseInt(value);
+            if (LINGER.equals(key) && number != 0) {
+                return "only 0 (reset connections on close) is supported, since SO_LINGER with a timeout is " +
+                        "undefined for non-blocking sockets";
+            }
+            return null;
+        } catch (NumberFormatException e) {
+            return "expected an integer";
+        }
+    }
+
+    public static String getKnownKeys() {
+        return BACKLOG + ", " + String.join(", ", optionNameByKey.keySet());
+    }
+
+    /** @param nameOrPath either the name of a built-in profile or the path to a properties file */
+    public static Map<String, String> loadProfile(String nameOrPath) throws IOException {
+        Map<String, String> builtInProfile = builtInProfiles.get(nameOrPath);
+        if (builtInProfile != null) {
+            return builtInProfile;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(Paths.get(nameOrPath))) {
+            properties.load(in);
+        }
+        Map<String, String> profile = new LinkedHashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            profile.put(key, properties.getProperty(key).trim());
+        }
+        return profile;
+    }
+
+    public static String getBuiltInProfileNames() {
+        return builtInProfiles.keySet().toString();
+    }
+
+    private static Object parseValue(SocketOption<?> option, String value) {
+        if (option.type() == Integer.class) {
+            return Integer.parseInt(value);
+        } else if (option.type() == Boolean.class) {
+            return Boolean.parseBoolean(value);
+        }
+        throw new IllegalArgumentException("Unsupported type for socket option " + option.name());
+    }
+
+    void applyTo(SocketChannel channel) throws IOException {
+        for (int i = 0; i < options.size(); i++) {
+            setOption(channel, options.get(i), values.get(i));
+        }
+    }
+
+    /**
+     * Only the receive buffer is set on a listening socket: it must be set there (before binding) for accepted
+     * connections to negotiate a TCP window scale large enough for buffers above 64 kB. Everything else is set on each
+     * accepted connection.
+     */
+    void applyTo(ServerSocketChannel channel) throws IOException {
+        for (int i = 0; i < options.size(); i++) {
+            if (options.get(i) == StandardSocketOptions.SO_RCVBUF) {
+                setOption(channel, options.get(i), values.get(i));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void setOption(NetworkChannel channel, SocketOption<T> option, Object value)
+            throws IOException {
+        channel.setOption(option, (T) value);
+    }
+
+    /** @return listen backlog, or 0 to use the JDK's default */
+    int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * @return the options as actually applied by the OS (e.g., Linux doubles buffer sizes), read back from a socket
+     */
+    String describe() throws IOException {
+        StringJoiner joiner = new StringJoiner(", ");
+        try (SocketChannel probe = SocketChannel.open()) {
+            applyTo(probe);
+            for (int i = 0; i < options.size(); i++) {
+                SocketOption<?> option = options.get(i);
+                Object applied = probe.getOption(option);
+                if (applied.equals(values.get(i))) {
+                    joiner.add(option.name() + "=" + applied);
+                } else {
+                    joiner.add(String.format("%s=%s (requested %s)", option.name(), applied, values.get(i)));
+                }
+            }
+        }
+        joiner.add(BACKLOG + "=" + (backlog > 0 ? String.valueOf(backlog) : "default"));
+        return joiner.toString();
+    }
+}
@@ -1,6 +1,8 @@
 package com.luciopaiva;
 
 import com.luciopaiva.arguments.ClientArguments;
+import com.luciopaiva.control.ControlProtocol;
+import com.luciopaiva.control.WorkerLink;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -18,75 +20,154 @@ public class TcpClients {
     private final InetSocketAddress serverAddress;
     private final ClientArguments arguments;
     private final ByteBuffer receiveBuffer;
+    private final SelectedKeys selectedKeys;
+    private final Idler idler;
+    private final SocketProfile socketProfile;
     private final long metricsReportPeriodInNanos;
+    private final Histogram connectTimesInMicros;
+    /** only set when running as a worker of LoadController; metrics then go to the controller instead of stdout */
+    private final WorkerLink controllerLink;
 
+    private volatile boolean isActive = true;
     private int activeKeys;
     private long numberOfSocketsToConnect;
     private long nextTimeShouldReportMetrics;
+    private long lastTimeReportedMetrics;
+    private long cpuTimeAtLastReportInNanos;
 
     private long bytesReceived;
     private long connectedClients;
     private long connectionSucceeded;
     private long connectionFailed;
+    private long reportCount;
 
-    private TcpClients(ClientArguments arguments) throws IOException {
+    TcpClients(ClientArguments arguments, WorkerLink controllerLink) throws IOException {
         this.arguments = arguments;
+        this.controllerLink = controllerLink;
 
         metricsReportPeriodInNanos = arguments.metricsPeriodInMillis * 1_000_000;
 
         numberOfSocketsToConnect = arguments.numberOfClients;
 
         reporter = new MetricsReporter();
-        reporter.addField("clients", 7, "d");
-        reporter.addField("waiting", 7, "d");
-        reporter.addField("connect", 7, "d");
-        reporter.addField("confail", 7, "d");
-        reporter.addField("in", 7, "s");
+        reporter.addField("clients", 7);
+        reporter.addField("waiting", 7);
+        reporter.addField("connect", 7);
+        reporter.addField("confail", 7);
+        reporter.addField("in", 7);
+        reporter.addField("cpu", 7);
+        reporter.addField("conp50", 7);
+        reporter.addField("conp99", 7);
+        reporter.addField("conmax", 7);
+        connectTimesInMicros = new Histogram();
 
         selector = Selector.open();
+        selectedKeys = new SelectedKeys(selector, this::handleSelectionKey);
+        idler = Idler.create(arguments.idleStrategy, arguments.selectTimeoutInMillis);
         serverAddress = new InetSocketAddress(arguments.host, arguments.port);
         activeKeys = arguments.numberOfClients;
         receiveBuffer = ByteBuffer.allocate(Constants.PACKET_SIZE_IN_BYTES);
+
+        socketProfile = new SocketProfile(arguments.socketOptions);
+        System.out.println("Socket options: " + socketProfile.describe());
+    }
+
+    /** Makes the main loop stop and close all connections. Can be called from any thread. */
+    void stop() {
+        isActive = false;
+        selector.wakeup();
     }
 
-    private void run() {
+    void run() {
+        lastTimeReportedMetrics = System.nanoTime();
+        cpuTimeAtLastReportInNanos = Utils.getCurrentThreadCpuTimeInNanos();
+
         try {
-            while (activeKeys > 0) {
+            while (isActive && activeKeys > 0) {
                 if (numberOfSocketsToConnect > 0) {
                     createConnections();
                 }
 
-                if (selector.select(arguments.selectTimeoutInMillis) > 0) {
-                    for (SelectionKey selectionKey : selector.selectedKeys()) {
-                        handleSelectionKey(selectionKey);
-                    }
-                    selector.selectedKeys().clear();
+                if (idler.select(selector, nextTimeShouldReportMetrics - System.nanoTime()) > 0) {
+                    selectedKeys.dispatch();
                 }
 
                 long now = System.nanoTime();
 
                 if (nextTimeShouldReportMetrics <= now) {
-                    reportMetrics();
+                    reportMetrics(now);
                     nextTimeShouldReportMetrics = now + metricsReportPeriodInNanos;
                 }
             }
+
+            for (SelectionKey selectionKey : selector.keys()) {
+                selectionKey.channel().close();
+            }
+            selector.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
 
         System.out.println("No more active keys. Terminating...");
+
+        if (controllerLink != null) {
+            try {
+                controllerLink.beginMessage(ControlProtocol.DONE);
+                controllerLink.send();
+                controllerLink.close();
+            } catch (IOException ignored) {
+            }
+        }
     }
 
-    private void reportMetrics() {
-        reporter.report(connectedClients, numberOfSocketsToConnect, connectionSucceeded, connectionFailed,
-                Utils.bytesToStr(bytesReceived));
+    private void reportMetrics(long now) throws IOException {
+        long cpuTimeInNanos = Utils.getCurrentThreadCpuTimeInNanos();
+
+        if (controllerLink != null) {
+            reportMetricsToController();
+        } else {
+            reportMetricsToConsole(cpuTimeInNanos, now);
+        }
+
+        cpuTimeAtLastReportInNanos = cpuTimeInNanos;
+        lastTimeReportedMetrics = now;
+        reportCount++;
         resetMetrics();
     }
 
+    private void reportMetricsToController() throws IOException {
+        StringBuilder message = controllerLink.beginMessage(ControlProtocol.METRICS);
+        message.append(ControlProtocol.TOKEN_SEPARATOR).append(reportCount);
+        message.append(ControlProtocol.TOKEN_SEPARATOR).append(connectedClients);
+        message.append(ControlProtocol.TOKEN_SEPARATOR).append(numberOfSocketsToConnect);
+        message.append(ControlProtocol.TOKEN_SEPARATOR).append(connectionSucceeded);
+        message.append(ControlProtocol.TOKEN_SEPARATOR).append(connectionFailed);
+        message.append(ControlProtocol.TOKEN_SEPARATOR).append(bytesReceived);
+        message.append(ControlProtocol.TOKEN_SEPARATOR);
+        connectTimesInMicros.appendTo(message);
+        controllerLink.send();
+    }
+
+    private void reportMetricsToConsole(long cpuTimeInNanos, long now) {
+        reporter.beginRow();
+        reporter.putLong(connectedClients);
+        reporter.putLong(numberOfSocketsToConnect);
+        reporter.putLong(connectionSucceeded);
+        reporter.putLong(connectionFailed);
+        reporter.putBytes(bytesReceived);
+        reporter.putLong(Utils.cpuUsagePercent(cpuTimeInNanos, cpuTimeAtLastReportInNanos,
+                now - lastTimeReportedMetrics));
+        reporter.putLong(connectTimesInMicros.getValueAtPercentile(50));
+        reporter.putLong(connectTimesInMicros.getValueAtPercentile(99));
+        reporter.putLong(connectTimesInMicros.getMax());
+        reporter.endRow();
+    }
+
     private void resetMetrics() {
         connectionSucceeded = 0;
         connectionFailed = 0;
         bytesReceived = 0;
+        connectTimesInMicros.reset();
     }
 
     private void handleSelectionKey(SelectionKey selectionKey) {
@@ -99,9 +180,11 @@ public class TcpClients {
                     if (arguments.debug) {
                         System.out.println("Connected.");
                     }
+                    long connectStartTime = (Long) selectionKey.attachment();
+                    connectTimesInMicros.record((System.nanoTime() - connectStartTime) / 1000);
                     // unregister for OP_CONNECT (important otherwise select() will return immediately),
                     // register for OP_READ
-                    socketChannel.register(selector, SelectionKey.OP_READ);
+                    socketChannel.register(selector, SelectionKey.OP_READ, null);
                     connectionSucceeded++;
                     connectedClients++;
                 } else {
@@ -176,7 +259,13 @@ public class TcpClients {
     private void createSocketChannel() throws IOException {
         SocketChannel socketChannel = SocketChannel.open();
         socketChannel.configureBlocking(false);
-        socketChannel.register(selector, SelectionKey.OP_CONNECT);
+        // buffer sizes must be set before connecting, so the TCP window scale is negotiated accordingly
+        socketProfile.applyTo(socketChannel);
+        if (arguments.bindAddress != null) {
+            socketChannel.bind(new InetSocketAddress(arguments.bindAddress, 0));
+        }
+        // keep track of when we started connecting, so we can measure how long it takes
+        socketChannel.register(selector, SelectionKey.OP_CONNECT, System.nanoTime());
         int sendBufferLength = socketChannel.getOption(StandardSocketOptions.SO_SNDBUF);
         int recvBufferLength = socketChannel.getOption(StandardSocketOptions.SO_RCVBUF);
         if (arguments.debug) {
@@ -190,8 +279,16 @@ public class TcpClients {
         System.out.println("Started!");
 
         ClientArguments arguments = ClientArguments.parse(args);
+        WorkerLink controllerLink = null;
+
+        if (arguments.controllerAddress != null) {
+            System.out.println("Waiting for configuration from controller at " + arguments.controllerAddress);
+            controllerLink = WorkerLink.connect(arguments.controllerAddress);
+            arguments = ClientArguments.parse(controllerLink.awaitConfig());
+            controllerLink.awaitStart();
+        }
 
-        TcpClients clients = new TcpClients(arguments);
+        TcpClients clients = new TcpClients(arguments, controllerLink);
         clients.run();
     }
 }
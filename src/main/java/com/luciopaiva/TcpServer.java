@@ -1,10 +1,15 @@
 package com.luciopaiva;
 
 import com.luciopaiva.arguments.ServerArguments;
+import com.luciopaiva.payload.PayloadGenerator;
+import com.luciopaiva.trace.Trace;
+import com.luciopaiva.trace.TraceReader;
+import com.luciopaiva.trace.TraceWriter;
 
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.SocketOption;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
@@ -15,11 +20,9 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 import java.util.function.Consumer;
 import java.util.function.LongConsumer;
@@ -31,27 +34,47 @@ public class TcpServer {
     private final MetricsReporter reporter;
     private final Selector selector;
     private final ServerSocketChannel tcpServerSocketChannel;
-    private final HashSet<SocketChannel> clientSocketChannels;
-    private final ByteBuffer buffer;
+    private final ClientList clients;
+    private final PayloadGenerator payloads;
     private final ServerArguments arguments;
+    /** only set when running with multiple listeners; metrics then go there instead of stdout */
+    private final ListenerStats listenerStats;
+    private final int listenerIndex;
     private final long metricsReportPeriodInNanos;
     private final long sendPeriodPeriodInNanos;
     private final long sendPeriodSlotDeltaInNanos;
     private final LongConsumer sendDataToClients;
-    private final Consumer<SocketChannel> acceptNewTcpConnection;
-    private final Consumer<SocketChannel> doCloseKey;
+    private final Consumer<ClientConnection> acceptNewTcpConnection;
+    private final SelectedKeys selectedKeys;
+    private final Idler idler;
+    private final SocketProfile socketProfile;
     private final ByteBuffer receiveBuffer;
+    /** payload being sent in the current send tick */
+    private ByteBuffer buffer;
 
     // uniform send strategy
-    private final List<HashSet<SocketChannel>> sendSlots;
-    private final Map<SocketChannel, Integer> slotIndexBySocketChannel;
+    private final List<ClientList> sendSlots;
     private final Random random = new Random(42);
     private int nextSlotIndex;
 
-    private boolean isServerActive = true;
+    // trace replay; clients are distributed across the trace's topics as they connect
+    private final TraceReader traceReader;
+    private final List<ClientList> topics;
+    private int nextTopicIndex;
+    private long replayStartTimeInNanos;
+    private long firstRecordTimeInNanos;
+    private boolean isReplayStarted = false;
+
+    // trace recording
+    private final TraceWriter traceWriter;
+    private boolean isRecordingTrace;
+
+    private volatile boolean isServerActive = true;
     private int activeClientsCount = 0;
     private long nextTimeShouldSend = 0;
     private long nextTimeShouldReportMetrics = 0;
+    private long lastTimeReportedMetrics = 0;
+    private long cpuTimeAtLastReportInNanos = 0;
 
     /* metrics */
     private long successfulSends = 0;
@@ -60,100 +83,264 @@ public class TcpServer {
     private long timeSpentSendingSomethingInNanos = 0;
     private long bytesSent = 0;
     private long bytesReceived = 0;
-
-    private TcpServer(ServerArguments arguments) throws IOException {
+    private long acceptedConnections = 0;
+    /** how late sends start in relation to when they were due, i.e., the wakeup latency of the main loop */
+    private long sendLagSumInNanos = 0;
+    private long sendLagMaxInNanos = 0;
+    private long sendLagCount = 0;
+    /** what was last published to listenerStats, when running with multiple listeners */
+    private long publishedReportEpoch = 0;
+    private long publishedSendLagMaxInNanos = 0;
+
+    TcpServer(ServerArguments arguments, int listenerIndex, ListenerStats listenerStats) throws IOException {
         this.arguments = arguments;
+        this.listenerIndex = listenerIndex;
+        this.listenerStats = listenerStats;
         metricsReportPeriodInNanos = arguments.metricsPeriodInMillis * 1_000_000;
         sendPeriodPeriodInNanos = arguments.sendPeriodInMillis * 1_000_000;
         sendPeriodSlotDeltaInNanos = sendPeriodPeriodInNanos / Constants.UNIFORM_STRATEGY_NUMBER_OF_SLOTS;
 
         reporter = new MetricsReporter();
-        reporter.addField("LF", 7, "d");
-        reporter.addField("clients", 7, "d");
-        reporter.addField("sendcnt", 7, "d");
-        reporter.addField("partial", 7, "d");
-        reporter.addField("failed", 7, "d");
-        reporter.addField("in", 7, "s");
-        reporter.addField("out", 7, "s");
+        reporter.addField("LF", 7);
+        reporter.addField("clients", 7);
+        reporter.addField("sendcnt", 7);
+        reporter.addField("partial", 7);
+        reporter.addField("failed", 7);
+        reporter.addField("in", 7);
+        reporter.addField("out", 7);
+        reporter.addField("cpu", 7);
+        reporter.addField("lag", 7);
+        reporter.addField("lagmax", 7);
+        if (arguments.compressionLevel > 0) {
+            reporter.addField("ziptime", 7);
+            reporter.addField("ratio", 7);
+        }
 
         selector = SelectorProvider.provider().openSelector();
+        selectedKeys = new SelectedKeys(selector, this::handleSelectionKey);
+        idler = Idler.create(arguments.idleStrategy, arguments.selectTimeoutInMillis);
         receiveBuffer = ByteBuffer.allocate(Constants.PACKET_SIZE_IN_BYTES);
 
-        if (arguments.sendStrategy == Constants.SendStrategy.Burst) {
-            clientSocketChannels = new HashSet<>();
+        traceReader = arguments.traceReplayPath != null ? new TraceReader(Paths.get(arguments.traceReplayPath)) : null;
+        traceWriter = arguments.traceRecordPath != null ?
+                new TraceWriter(Paths.get(arguments.traceRecordPath), System.nanoTime()) : null;
+        isRecordingTrace = traceWriter != null;
+
+        if (traceReader != null) {
+            if (traceReader.getRecordCount() == 0) {
+                throw new IOException("Trace is empty: " + arguments.traceReplayPath);
+            }
+            int numberOfTopics = Math.max(1, traceReader.getMaxTopic() + 1);
+            topics = new ArrayList<>(numberOfTopics);
+            for (int i = 0; i < numberOfTopics; i++) {
+                topics.add(new ClientList());
+            }
+            sendDataToClients = this::replayTrace;
+            acceptNewTcpConnection = this::acceptNewTcpConnectionReplay;
+
+            // nullify unnecessary members
+            clients = null;
+            sendSlots = null;
+        } else if (arguments.sendStrategy == Constants.SendStrategy.Burst) {
+            clients = new ClientList();
             sendDataToClients = this::sendDataToAllClients;
             acceptNewTcpConnection = this::acceptNewTcpConnectionBurstStrategy;
-            doCloseKey = this::closeKeyBurstStrategy;
 
             // nullify unnecessary members
             sendSlots = null;
-            slotIndexBySocketChannel = null;
+            topics = null;
         } else {
             sendSlots = new ArrayList<>(Constants.UNIFORM_STRATEGY_NUMBER_OF_SLOTS);
             for (int i = 0; i < Constants.UNIFORM_STRATEGY_NUMBER_OF_SLOTS; i++) {
-                sendSlots.add(new HashSet<>());
+                sendSlots.add(new ClientList());
             }
-            slotIndexBySocketChannel = new HashMap<>();
             sendDataToClients = this::sendDataToClientInNextSlot;
             acceptNewTcpConnection = this::acceptNewTcpConnectionUniformStrategy;
-            doCloseKey = this::closeKeyUniformStrategy;
 
             // nullify unnecessary members
-            clientSocketChannels = null;
+            clients = null;
+            topics = null;
         }
 
-        // prepare buffer with random data to send
-        Random random = new Random(42);
-        buffer = ByteBuffer.allocate(arguments.packetSizeInBytes);
-        while (buffer.hasRemaining()) {
-            buffer.putLong(random.nextLong());
-        }
-        buffer.flip();
+        // when replaying, payload sizes come from the trace instead of the distribution
+        payloads = new PayloadGenerator(arguments.payloadSizes, arguments.payloadEntropyInBits,
+                arguments.compressionLevel, traceReader != null ? traceReader.getMaxSize() : 0);
+
+        socketProfile = new SocketProfile(arguments.socketOptions);
 
         tcpServerSocketChannel = ServerSocketChannel.open();
         tcpServerSocketChannel.configureBlocking(false);
+        socketProfile.applyTo(tcpServerSocketChannel);
+        if (listenerStats != null) {
+            // let the kernel spread incoming connections across all listeners bound to the same port
+            SocketOption<Boolean> reusePort = Utils.findSocketOption(tcpServerSocketChannel, "SO_REUSEPORT");
+            if (reusePort == null) {
+                throw new IOException("SO_REUSEPORT is not supported here (it requires Java 9+ and Linux or BSD)");
+            }
+            tcpServerSocketChannel.setOption(reusePort, true);
+        }
 
         tcpServerSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
     }
 
-    private void run() throws IOException {
+    void bind() throws IOException {
         InetAddress host = InetAddress.getByName(ADDRESS_IPV4_ANY);
-        this.tcpServerSocketChannel.bind(new InetSocketAddress(host, arguments.port));
+        this.tcpServerSocketChannel.bind(new InetSocketAddress(host, arguments.port), socketProfile.getBacklog());
+    }
+
+    /** @return the port actually bound, which is only known after bind() if port zero was requested */
+    int getLocalPort() throws IOException {
+        return ((InetSocketAddress) tcpServerSocketChannel.getLocalAddress()).getPort();
+    }
+
+    /** Makes the main loop stop and close all connections. Can be called from any thread. */
+    void stop() {
+        isServerActive = false;
+        selector.wakeup();
+    }
+
+    void run() throws IOException {
+        if (listenerStats != null) {
+            System.out.println(String.format("Listener %d started at %s. Entering main loop...", listenerIndex,
+                    Utils.getAddressStr(tcpServerSocketChannel.getLocalAddress())));
+        } else {
+            System.out.println(String.format("Server started at %s. Entering main loop...",
+                    Utils.getAddressStr(tcpServerSocketChannel.getLocalAddress())));
+        }
+        if (listenerIndex == 0) {
+            System.out.println("Socket options: " + socketProfile.describe());
+        }
 
-        System.out.println(String.format("Server started at %s. Entering main loop...",
-                Utils.getAddressStr(tcpServerSocketChannel.getLocalAddress())));
+        if (traceReader != null) {
+            System.out.println(String.format("Replaying %d messages to %d topics (speed: %.1fx, fan-out: %d). " +
+                    "Replay starts when the first client connects.", traceReader.getRecordCount(), topics.size(),
+                    arguments.replaySpeed, arguments.replayFanOut));
+        }
+        if (isRecordingTrace) {
+            System.out.println("Recording trace to " + arguments.traceRecordPath);
+            closeTraceOnShutdown();
+        }
 
-        nextTimeShouldSend = System.nanoTime();
+        // when replaying, there's nothing to send until the first client connects
+        nextTimeShouldSend = traceReader != null ? Long.MAX_VALUE : System.nanoTime();
+        lastTimeReportedMetrics = System.nanoTime();
+        cpuTimeAtLastReportInNanos = Utils.getCurrentThreadCpuTimeInNanos();
 
         while (isServerActive) {
             try {
-                if (selector.select(arguments.selectTimeoutInMillis) > 0) {
-                    selector.selectedKeys().forEach(this::handleSelectionKey);
-                    selector.selectedKeys().clear();
+                long nextDeadline = Math.min(nextTimeShouldSend, nextTimeShouldReportMetrics);
+                if (idler.select(selector, nextDeadline - System.nanoTime()) > 0) {
+                    selectedKeys.dispatch();
                 }
 
                 long now = System.nanoTime();
 
                 if (nextTimeShouldSend <= now) {
+                    recordSendLag(now - nextTimeShouldSend);
                     sendDataToClients.accept(now);  // call intended strategy
                 }
 
                 if (nextTimeShouldReportMetrics <= now) {
-                    reportMetrics();
+                    reportMetrics(now);
                     nextTimeShouldReportMetrics = now + metricsReportPeriodInNanos;
                 }
 
+                if (listenerStats != null) {
+                    publishMetrics();
+                }
+
             } catch (ClosedSelectorException e) {
                 isServerActive = false;
                 System.out.println("Selector was closed. Terminating...");
             }
         }
+
+        if (isRecordingTrace) {
+            traceWriter.close();
+        }
+        if (selector.isOpen()) {
+            for (SelectionKey selectionKey : selector.keys()) {
+                selectionKey.channel().close();
+            }
+            selector.close();
+        }
+    }
+
+    /** Makes the main loop stop on Ctrl+C, so the trace file gets properly closed. */
+    private void closeTraceOnShutdown() {
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stop();
+            try {
+                mainThread.join();
+            } catch (InterruptedException ignored) {
+            }
+        }));
+    }
+
+    private void recordToTrace(long now, int topic) {
+        try {
+            traceWriter.append(now, topic, payloads.getLastRawSize());
+        } catch (IOException e) {
+            System.err.println("Error recording trace, recording stopped: " + e.getMessage());
+            isRecordingTrace = false;
+        }
+    }
+
+    private void replayTrace(long now) {
+        do {
+            buffer = payloads.next(traceReader.size());
+            int topic = traceReader.topic();
+            if (topic == Trace.ALL_CLIENTS) {
+                // a broadcast already reaches everybody, so fan-out sends it again instead
+                for (int copy = 0; copy < arguments.replayFanOut; copy++) {
+                    for (int i = 0; i < topics.size(); i++) {
+                        sendToClients(topics.get(i));
+                    }
+                }
+            } else {
+                // each message goes to its own topic and to the next (fan-out - 1) ones, wrapping around, so clients
+                // get more than one copy when fan-out exceeds the number of topics
+                for (int i = 0; i < arguments.replayFanOut; i++) {
+                    sendToClients(topics.get((topic + i) % topics.size()));
+                }
+            }
+
+            if (!nextTraceRecord()) {
+                nextTimeShouldSend = Long.MAX_VALUE;
+                System.out.println("Trace replay finished.");
+                break;
+            }
+        } while (nextTimeShouldSend <= now);
+
+        // update load factor metrics
+        long elapsed = System.nanoTime() - now;
+        timeSpentSendingSomethingInNanos += elapsed;
+    }
+
+    /** Advances the trace and schedules the next send according to the replay speed. */
+    private boolean nextTraceRecord() {
+        try {
+            if (!traceReader.next()) {
+                return false;
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading trace, replay stopped: " + e.getMessage());
+            return false;
+        }
+        long elapsedInTrace = traceReader.timeInNanos() - firstRecordTimeInNanos;
+        nextTimeShouldSend = replayStartTimeInNanos + (long) (elapsedInTrace / arguments.replaySpeed);
+        return true;
     }
 
     private void sendDataToClientInNextSlot(long now) {
-        HashSet<SocketChannel> clients = sendSlots.get(nextSlotIndex);
+        ClientList clients = sendSlots.get(nextSlotIndex);
         if (!clients.isEmpty()) {
-            clients.forEach(this::sendToClient);
+            buffer = payloads.next();
+            sendToClients(clients);
+            if (isRecordingTrace) {
+                recordToTrace(now, nextSlotIndex);
+            }
 
             // update load factor metrics
             long elapsed = System.nanoTime() - now;
@@ -168,7 +355,13 @@ public class TcpServer {
     }
 
     private void sendDataToAllClients(long now) {
-        clientSocketChannels.forEach(this::sendToClient);
+        if (!clients.isEmpty()) {
+            buffer = payloads.next();
+            sendToClients(clients);
+        }
+        if (isRecordingTrace && !clients.isEmpty()) {
+            recordToTrace(now, Trace.ALL_CLIENTS);
+        }
 
         // update load factor metrics
         long elapsed = System.nanoTime() - now;
@@ -177,10 +370,17 @@ public class TcpServer {
         nextTimeShouldSend += sendPeriodPeriodInNanos;
     }
 
+    private void sendToClients(ClientList clients) {
+        // walk by index; an iterator would mean garbage on every send
+        for (int i = 0; i < clients.size(); i++) {
+            sendToClient(clients.get(i).channel);
+        }
+    }
+
     private void sendToClient(SocketChannel client) {
         try {
             long written = client.write(buffer);
-            if (written == arguments.packetSizeInBytes) {
+            if (written == buffer.limit()) {
                 successfulSends++;
             } else if (written == 0) {
                 failedSends++;
@@ -195,11 +395,78 @@ public class TcpServer {
         }
     }
 
-    private void reportMetrics() {
+    private void recordSendLag(long lagInNanos) {
+        sendLagSumInNanos += lagInNanos;
+        sendLagCount++;
+        if (lagInNanos > sendLagMaxInNanos) {
+            sendLagMaxInNanos = lagInNanos;
+        }
+    }
+
+    private void reportMetrics(long now) {
+        long cpuTimeInNanos = Utils.getCurrentThreadCpuTimeInNanos();
+
+        if (listenerStats != null) {
+            // everything else is published (and reset) by publishMetrics(), still to run in this same pass
+            listenerStats.set(listenerIndex, ListenerStats.CPU_TIME_IN_NANOS, cpuTimeInNanos);
+            return;
+        }
+
         int loadFactor = (int) (100 * (timeSpentSendingSomethingInNanos / (double) metricsReportPeriodInNanos));
-        reporter.report(loadFactor, activeClientsCount, successfulSends, partialSends, failedSends,
-                Utils.bytesToStr(bytesReceived), Utils.bytesToStr(bytesSent));
+        long cpuUsage = Utils.cpuUsagePercent(cpuTimeInNanos, cpuTimeAtLastReportInNanos,
+                now - lastTimeReportedMetrics);
+        long averageSendLagInNanos = sendLagCount > 0 ? sendLagSumInNanos / sendLagCount : 0;
+
+        reporter.beginRow();
+        reporter.putLong(loadFactor);
+        reporter.putLong(activeClientsCount);
+        reporter.putLong(successfulSends);
+        reporter.putLong(partialSends);
+        reporter.putLong(failedSends);
+        reporter.putBytes(bytesReceived);
+        reporter.putBytes(bytesSent);
+        reporter.putLong(cpuUsage);
+        reporter.putLong(averageSendLagInNanos / 1000);
+        reporter.putLong(sendLagMaxInNanos / 1000);
+        if (payloads.isCompressing()) {
+            reporter.putLong(payloads.getCompressionTimeInNanos() / 1000);
+            reporter.putLong(payloads.getCompressionRatio());
+        }
+        reporter.endRow();
 
+        cpuTimeAtLastReportInNanos = cpuTimeInNanos;
+        lastTimeReportedMetrics = now;
+        resetMetrics();
+    }
+
+    /**
+     * With multiple listeners, metrics are handed over to the main thread every pass, so that its reports don't depend
+     * on when each listener happens to wake up. Only what changed gets written.
+     */
+    private void publishMetrics() {
+        listenerStats.add(listenerIndex, ListenerStats.ACCEPTS, acceptedConnections);
+        listenerStats.set(listenerIndex, ListenerStats.CLIENTS, activeClientsCount);
+        listenerStats.add(listenerIndex, ListenerStats.SUCCESSFUL_SENDS, successfulSends);
+        listenerStats.add(listenerIndex, ListenerStats.PARTIAL_SENDS, partialSends);
+        listenerStats.add(listenerIndex, ListenerStats.FAILED_SENDS, failedSends);
+        listenerStats.add(listenerIndex, ListenerStats.BYTES_RECEIVED, bytesReceived);
+        listenerStats.add(listenerIndex, ListenerStats.BYTES_SENT, bytesSent);
+        listenerStats.add(listenerIndex, ListenerStats.SENDING_TIME_IN_NANOS, timeSpentSendingSomethingInNanos);
+        listenerStats.add(listenerIndex, ListenerStats.SEND_LAG_SUM_IN_NANOS, sendLagSumInNanos);
+        listenerStats.add(listenerIndex, ListenerStats.SEND_LAG_COUNT, sendLagCount);
+        listenerStats.add(listenerIndex, ListenerStats.COMPRESSION_TIME_IN_NANOS, payloads.getCompressionTimeInNanos());
+        listenerStats.add(listenerIndex, ListenerStats.RAW_PAYLOAD_BYTES, payloads.getRawBytes());
+        listenerStats.add(listenerIndex, ListenerStats.COMPRESSED_PAYLOAD_BYTES, payloads.getCompressedBytes());
+
+        long reportEpoch = listenerStats.getReportEpoch();
+        if (reportEpoch != publishedReportEpoch) {
+            publishedReportEpoch = reportEpoch;
+            publishedSendLagMaxInNanos = -1;  // so the new epoch's slot gets written even if there was no lag
+        }
+        if (sendLagMaxInNanos > publishedSendLagMaxInNanos) {
+            publishedSendLagMaxInNanos = sendLagMaxInNanos;
+            listenerStats.setSendLagMax(listenerIndex, reportEpoch, sendLagMaxInNanos);
+        }
         resetMetrics();
     }
 
@@ -210,6 +477,11 @@ public class TcpServer {
         timeSpentSendingSomethingInNanos = 0;
         bytesSent = 0;
         bytesReceived = 0;
+        acceptedConnections = 0;
+        payloads.resetMetrics();
+        sendLagSumInNanos = 0;
+        sendLagMaxInNanos = 0;
+        sendLagCount = 0;
     }
 
     private void handleSelectionKey(SelectionKey selectionKey) {
@@ -257,12 +529,15 @@ public class TcpServer {
         // this is probably not necessary because the server socket was already set to non-blocking and
         // I don't think we can change the configuration after accept() is called anyway
         socketChannel.configureBlocking(false);
-        socketChannel.register(selector, SelectionKey.OP_READ);
+        socketProfile.applyTo(socketChannel);
+        ClientConnection connection = new ClientConnection(socketChannel);
+        socketChannel.register(selector, SelectionKey.OP_READ, connection);
         int sendBufferLength = socketChannel.getOption(StandardSocketOptions.SO_SNDBUF);
         int recvBufferLength = socketChannel.getOption(StandardSocketOptions.SO_RCVBUF);
 
-        acceptNewTcpConnection.accept(socketChannel);
+        acceptNewTcpConnection.accept(connection);
         activeClientsCount++;
+        acceptedConnections++;
 
         if (arguments.debug) {
             System.out.println(String.format("Connection accepted (sndbuf: %d, recvbuf: %d).",
@@ -270,44 +545,75 @@ public class TcpServer {
         }
     }
 
-    private void acceptNewTcpConnectionBurstStrategy(SocketChannel socketChannel) {
-        clientSocketChannels.add(socketChannel);
+    private void acceptNewTcpConnectionBurstStrategy(ClientConnection connection) {
+        clients.add(connection);
     }
 
-    private void acceptNewTcpConnectionUniformStrategy(SocketChannel socketChannel) {
+    private void acceptNewTcpConnectionUniformStrategy(ClientConnection connection) {
         // picks a random slot and adds the client there
         int index = random.nextInt(sendSlots.size());
-        sendSlots.get(index).add(socketChannel);
-        slotIndexBySocketChannel.put(socketChannel, index);
+        sendSlots.get(index).add(connection);
+    }
+
+    private void acceptNewTcpConnectionReplay(ClientConnection connection) {
+        topics.get(nextTopicIndex).add(connection);
+        nextTopicIndex = (nextTopicIndex + 1) % topics.size();
+
+        if (!isReplayStarted) {
+            isReplayStarted = true;
+            replayStartTimeInNanos = System.nanoTime();
+            nextTraceRecord();
+            firstRecordTimeInNanos = traceReader.timeInNanos();
+            nextTimeShouldSend = replayStartTimeInNanos;
+        }
     }
 
     private void closeKey(SelectionKey selectionKey) {
         SocketChannel socketChannel = (SocketChannel) selectionKey.channel();
+        ClientConnection connection = (ClientConnection) selectionKey.attachment();
         try {
             socketChannel.close();
         } catch (IOException ignored) {
         } finally {
-            doCloseKey.accept(socketChannel);
+            // whatever the strategy, the connection knows which list it's in
+            if (connection.list != null) {
+                connection.list.remove(connection);
+            }
             selectionKey.cancel();
             activeClientsCount--;
         }
     }
 
-    private void closeKeyBurstStrategy(SocketChannel socketChannel) {
-        clientSocketChannels.remove(socketChannel);
-    }
+    public static void main(String ...args) throws IOException {
+        ServerArguments arguments = ServerArguments.parse(args);
 
-    private void closeKeyUniformStrategy(SocketChannel socketChannel) {
-        Integer index = slotIndexBySocketChannel.get(socketChannel);
-        if (index != null) {
-            sendSlots.get(index).remove(socketChannel);
+        if (arguments.numberOfListeners > 1) {
+            runListeners(arguments);
+        } else {
+            TcpServer server = new TcpServer(arguments, 0, null);
+            server.bind();
+            server.run();
         }
     }
 
-    public static void main(String ...args) throws IOException {
-        ServerArguments arguments = ServerArguments.parse(args);
+    /** Runs one server per listener, each in its own thread, while the main thread reports their metrics. */
+    private static void runListeners(ServerArguments arguments) throws IOException {
+        ListenerStats listenerStats = new ListenerStats(arguments.numberOfListeners);
+
+        for (int i = 0; i < arguments.numberOfListeners; i++) {
+            TcpServer server = new TcpServer(arguments, i, listenerStats);
+            server.bind();
+            Thread thread = new Thread(() -> {
+                try {
+                    server.run();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.exit(1);
+                }
+            }, "listener-" + i);
+            thread.start();
+        }
 
-        TcpServer server = new TcpServer(arguments);
-        server.run();
+        new ListenerStatsReporter(listenerStats, arguments.metricsPeriodInMillis, arguments.compressionLevel > 0).run();
     }
 }
@@ -1,7 +1,11 @@
 package com.luciopaiva;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.channels.NetworkChannel;
 
 class Utils {
 
@@ -10,18 +14,49 @@ class Utils {
     private final static long MEGA = KILO * KILO;
     private final static long HUNDRED_MEGA = 100 * MEGA;
 
+    private final static ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
     static String getAddressStr(SocketAddress socketAddress) {
         InetSocketAddress address = (InetSocketAddress) socketAddress;
         return address != null ? address.getHostString() + ":" + address.getPort() : "?";
     }
 
-    static String bytesToStr(long bytes) {
+    static void appendBytes(StringBuilder builder, long bytes) {
         if (bytes < HUNDRED_KILO) {
-            return String.valueOf(bytes);
+            builder.append(bytes);
         } else if (bytes < HUNDRED_MEGA) {
-            return (bytes / KILO) + "k";
+            builder.append(bytes / KILO).append('k');
         } else {
-            return (bytes / MEGA) + "M";
+            builder.append(bytes / MEGA).append('M');
+        }
+    }
+
+    /** @return CPU time spent by the calling thread so far, or -1 if the JVM can't measure it */
+    static long getCurrentThreadCpuTimeInNanos() {
+        return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : -1;
+    }
+
+    /** @return how much of the elapsed wall time the thread spent on CPU, in percent, or -1 if unknown */
+    static long cpuUsagePercent(long cpuTimeInNanos, long previousCpuTimeInNanos, long elapsedInNanos) {
+        if (cpuTimeInNanos < 0 || elapsedInNanos <= 0) {
+            return -1;
+        }
+        return 100 * (cpuTimeInNanos - previousCpuTimeInNanos) / elapsedInNanos;
+    }
+
+    /**
+     * Looks up a socket option by name among the ones the channel supports. This lets us use options that only exist
+     * in newer JDKs (e.g., SO_REUSEPORT, from Java 9) while still building for Java 8.
+     *
+     * @return null if the option is not supported
+     */
+    @SuppressWarnings("unchecked")
+    static <T> SocketOption<T> findSocketOption(NetworkChannel channel, String name) {
+        for (SocketOption<?> option : channel.supportedOptions()) {
+            if (option.name().equals(name)) {
+                return (SocketOption<T>) option;
+            }
         }
+        return null;
     }
 }
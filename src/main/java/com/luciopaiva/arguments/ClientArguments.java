@@ -8,11 +8,16 @@ public class ClientArguments extends CommonArguments {
 
     public String host = "127.0.0.1";
     public int numberOfClients = DEFAULT_NUMBER_OF_CLIENTS;
+    public String bindAddress = null;
+    public String controllerAddress = null;
 
     private ClientArguments() {
         super();
         options.addOption("a", "address", true, "the server host");
+        options.addOption("b", "bind", true, "local address to connect from");
         options.addOption("c", "clients", true, "how many clients to spawn");
+        options.addOption("m", "controller", true, "run as a worker of the load controller at the given " +
+                "host:port, which will send the remaining configuration");
     }
 
     public static ClientArguments parse(String ...args) {
@@ -26,9 +31,15 @@ public class ClientArguments extends CommonArguments {
         if (cmd.hasOption("a")) {
             arguments.host = cmd.getOptionValue("a");
         }
+        if (cmd.hasOption("b")) {
+            arguments.bindAddress = cmd.getOptionValue("b");
+        }
         if (cmd.hasOption("c")) {
             arguments.numberOfClients = Integer.parseInt(cmd.getOptionValue("c"));
         }
+        if (cmd.hasOption("m")) {
+            arguments.controllerAddress = cmd.getOptionValue("m");
+        }
 
         return arguments;
     }
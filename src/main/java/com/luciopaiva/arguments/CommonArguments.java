@@ -1,6 +1,8 @@
 package com.luciopaiva.arguments;
 
 import com.luciopaiva.Constants;
+import com.luciopaiva.Constants.IdleStrategy;
+import com.luciopaiva.SocketProfile;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -8,6 +10,10 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import static com.luciopaiva.Constants.METRICS_REPORT_PERIOD_IN_MILLIS;
 import static com.luciopaiva.Constants.SELECT_TIMEOUT_IN_MILLIS;
 
@@ -19,14 +25,25 @@ class CommonArguments {
     public boolean debug = false;
     public int port = Constants.SERVER_PORT;
     public int selectTimeoutInMillis = SELECT_TIMEOUT_IN_MILLIS;
+    public IdleStrategy idleStrategy = IdleStrategy.Block;
+    /** socket options as key=value pairs, from the profile and then from individual options, which take precedence */
+    public Map<String, String> socketOptions = new LinkedHashMap<>();
 
     CommonArguments() {
         options.addOption("d", "debug", false, "show debug logs");
         options.addOption("h", "help", false, "show help");
+        options.addOption("o", "socket-option", true, "socket option to set on every connection, as key=value " +
+                "(may be repeated); keys: " + SocketProfile.getKnownKeys());
+        options.addOption("u", "socket-profile", true, "socket options to start from: either a built-in profile " +
+                SocketProfile.getBuiltInProfileNames() + " or a properties file with key=value lines");
+        options.addOption("i", "idle-strategy", true, "what to do while there's nothing to select: 'block' " +
+                "(select() with timeout), 'spin' (selectNow() busy-spin), 'yield' (spin, then yield) or 'park' " +
+                "(spin, yield, then park with backoff up to the select() timeout)");
         options.addOption("p", "port", true, "the server port");
         options.addOption("r", "report-period", true,
                 "period for printing metrics, in millis");
-        options.addOption("w", "wait", true, "wait time between select()s, in millis");
+        options.addOption("w", "wait", true, "longest time to wait in select() while no send or report is " +
+                "due, in millis");
     }
 
     private void showHelp() {
@@ -50,15 +67,53 @@ class CommonArguments {
             if (cmd.hasOption("p")) {
                 arguments.port = Integer.parseInt(cmd.getOptionValue("p"));
             }
+            if (cmd.hasOption("i")) {
+                arguments.idleStrategy = IdleStrategy.getByName(cmd.getOptionValue("i"));
+                if (arguments.idleStrategy == null) {
+                    System.err.println(String.format("Invalid idle strategy '%s'. Valid names are: %s",
+                            cmd.getOptionValue("i"), IdleStrategy.getValidNames()));
+                    System.exit(1);
+                }
+            }
+            if (cmd.hasOption("u")) {
+                try {
+                    arguments.socketOptions.putAll(SocketProfile.loadProfile(cmd.getOptionValue("u")));
+                } catch (IOException e) {
+                    System.err.println(String.format("Could not read socket profile '%s': %s",
+                            cmd.getOptionValue("u"), e.getMessage()));
+                    System.exit(1);
+                }
+            }
+            if (cmd.hasOption("o")) {
+                for (String setting : cmd.getOptionValues("o")) {
+                    String[] keyAndValue = setting.split("=", 2);
+                    if (keyAndValue.length != 2) {
+                        System.err.println(String.format("Invalid socket option '%s'. Expected key=value", setting));
+                        System.exit(1);
+                    }
+                    arguments.socketOptions.put(keyAndValue[0].trim(), keyAndValue[1].trim());
+                }
+            }
+            for (Map.Entry<String, String> setting : arguments.socketOptions.entrySet()) {
+                if (!SocketProfile.isKnownKey(setting.getKey())) {
+                    System.err.println(String.format("Unknown socket option '%s'. Valid keys are: %s",
+                            setting.getKey(), SocketProfile.getKnownKeys()));
+                    System.exit(1);
+                }
+                String error = SocketProfile.checkValue(setting.getKey(), setting.getValue());
+                if (error != null) {
+                    System.err.println(String.format("Invalid value '%s' for socket option '%s': %s",
+                            setting.getValue(), setting.getKey(), error));
+                    System.exit(1);
+                }
+            }
             if (cmd.hasOption("w")) {
                 arguments.selectTimeoutInMillis = Integer.parseInt(cmd.getOptionValue("w"));
             }
             if (cmd.hasOption("r")) {
                 arguments.metricsPeriodInMillis = Long.parseLong(cmd.getOptionValue("r"));
-                if (arguments.metricsPeriodInMillis < arguments.selectTimeoutInMillis) {
-                    System.err.println("Metrics period cannot be less than select() timeout period. Main loop " +
-                            "iteration frequency is dictated by that period. To continue, decrease select() timeout " +
-                            "period as well.");
+                if (arguments.metricsPeriodInMillis <= 0) {
+                    System.err.println("Metrics period must be greater than zero.");
                     System.exit(1);
                 }
             }
@@ -0,0 +1,83 @@
+package com.luciopaiva.arguments;
+
+import com.luciopaiva.control.ControlProtocol;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Arguments for LoadController. Everything after a `--` is not parsed here, but pushed as is to all workers, e.g.:
+ *
+ *     -n 4 -- -a 10.0.0.1 -c 50000
+ */
+public class ControllerArguments {
+
+    private final Options options = new Options();
+
+    public boolean debug = false;
+    public int controlPort = ControlProtocol.DEFAULT_CONTROL_PORT;
+    public int numberOfLocalWorkers = 1;
+    public int numberOfExternalWorkers = 0;
+    public String[] sourceAddresses = null;
+    public String[] workerArguments = new String[0];
+
+    private ControllerArguments() {
+        options.addOption("d", "debug", false, "show debug logs");
+        options.addOption("h", "help", false, "show help");
+        options.addOption("l", "listen", true, "port to listen for workers at");
+        options.addOption("n", "workers", true, "how many local worker processes to spawn");
+        options.addOption("e", "external-workers", true, "how many workers started elsewhere (with " +
+                "--controller) to wait for, in addition to local ones");
+        options.addOption("s", "source-addresses", true, "comma-separated local addresses to distribute " +
+                "across workers, so they can open more connections than ephemeral ports allow per address");
+    }
+
+    private void showHelp() {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp(" [-- client arguments]", this.options);
+    }
+
+    public static ControllerArguments parse(String ...args) {
+        ControllerArguments arguments = new ControllerArguments();
+        CommandLineParser parser = new DefaultParser();
+
+        try {
+            CommandLine cmd = parser.parse(arguments.options, args);
+
+            if (cmd.hasOption("h")) {
+                arguments.showHelp();
+                System.exit(0);
+            }
+
+            arguments.debug = cmd.hasOption("d");
+
+            if (cmd.hasOption("l")) {
+                arguments.controlPort = Integer.parseInt(cmd.getOptionValue("l"));
+            }
+            if (cmd.hasOption("n")) {
+                arguments.numberOfLocalWorkers = Integer.parseInt(cmd.getOptionValue("n"));
+            }
+            if (cmd.hasOption("e")) {
+                arguments.numberOfExternalWorkers = Integer.parseInt(cmd.getOptionValue("e"));
+            }
+            if (arguments.numberOfLocalWorkers + arguments.numberOfExternalWorkers < 1) {
+                System.err.println("There must be at least one worker.");
+                System.exit(1);
+            }
+            if (cmd.hasOption("s")) {
+                arguments.sourceAddresses = cmd.getOptionValue("s").split(",");
+            }
+            arguments.workerArguments = cmd.getArgs();
+
+            return arguments;
+        } catch (ParseException e) {
+            arguments.showHelp();
+            System.exit(1);
+        }
+
+        return null;
+    }
+}
@@ -1,27 +1,52 @@
 package com.luciopaiva.arguments;
 
 import com.luciopaiva.Constants.SendStrategy;
+import com.luciopaiva.payload.SizeDistribution;
 import org.apache.commons.cli.CommandLine;
 
+import java.io.IOException;
+
 import static com.luciopaiva.Constants.METRICS_REPORT_PERIOD_IN_MILLIS;
 import static com.luciopaiva.Constants.PACKET_SIZE_IN_BYTES;
 import static com.luciopaiva.Constants.SEND_PERIOD_IN_MILLIS;
-import static com.luciopaiva.Constants.UNIFORM_STRATEGY_SELECT_TIMEOUT_IN_MILLIS;
 
 public class ServerArguments extends CommonArguments {
 
     public int packetSizeInBytes = PACKET_SIZE_IN_BYTES;
+    public SizeDistribution payloadSizes = null;
+    public int payloadEntropyInBits = 8;
+    public int compressionLevel = 0;
     public long sendPeriodInMillis = SEND_PERIOD_IN_MILLIS;
     public SendStrategy sendStrategy = SendStrategy.Burst;
+    public String traceRecordPath = null;
+    public String traceReplayPath = null;
+    public double replaySpeed = 1;
+    public int replayFanOut = 1;
+    public int numberOfListeners = 1;
 
     private ServerArguments() {
         super();
         options.addOption("e", "send-period", true,
                 "period for sending packets, in millis");
+        options.addOption("l", "listeners", true, "how many listeners to bind to the same port with " +
+                "SO_REUSEPORT, each running in its own thread (Java 9+)");
         options.addOption("g", "send-strategy", true, "either 'burst' (sends to " +
                 "everybody at the same time) or 'uniform' (spread players across send window)");
         options.addOption("s", "payload-size", true,
                 "size of the payload to send, in bytes");
+        options.addOption("z", "payload-distribution", true, "distribution of payload sizes: 'fixed' " +
+                "(--payload-size), 'uniform:MIN:MAX', 'lognormal:MU:SIGMA' or 'file:PATH' (one size per line)");
+        options.addOption("n", "entropy", true, "payload content entropy, in bits per byte, from 0 " +
+                "(all zeros) to 8 (random)");
+        options.addOption("k", "compress", true, "deflate each payload once per send tick with the given " +
+                "level (1-9) before sending it to clients");
+        options.addOption("t", "trace-record", true, "record every send into the given trace file");
+        options.addOption("y", "trace-replay", true, "replay the given trace file instead of sending " +
+                "--payload-size bytes every --send-period");
+        options.addOption("x", "replay-speed", true, "time scaling factor for replay (e.g., 2 replays twice " +
+                "as fast)");
+        options.addOption("f", "fan-out", true, "multiply how many client groups each replayed message goes to " +
+                "(broadcasts are sent that many times)");
     }
 
     public static ServerArguments parse(String ...args) {
@@ -38,22 +63,76 @@ public class ServerArguments extends CommonArguments {
                 System.err.println(String.format("Invalid send strategy '%s'. Valid names are: %s",
                         cmd.getOptionValue("g"), SendStrategy.getValidNames()));
                 System.exit(1);
-            } else if (arguments.sendStrategy == SendStrategy.Uniform) {
-                // this strategy forces a specific select() timeout period
-                arguments.selectTimeoutInMillis = UNIFORM_STRATEGY_SELECT_TIMEOUT_IN_MILLIS;
             }
         }
         if (cmd.hasOption("e")) {
             arguments.sendPeriodInMillis = Long.parseLong(cmd.getOptionValue("e"));
-            if (arguments.sendPeriodInMillis < arguments.selectTimeoutInMillis) {
-                System.err.println("Send period cannot be less than select() timeout period. Main loop iteration " +
-                        "frequency is dictated by that period. To continue, decrease select() timeout period as well.");
+            if (arguments.sendPeriodInMillis <= 0) {
+                System.err.println("Send period must be greater than zero.");
                 System.exit(1);
             }
         }
         if (cmd.hasOption("s")) {
             arguments.packetSizeInBytes = Integer.parseInt(cmd.getOptionValue("s"));
         }
+        try {
+            arguments.payloadSizes = SizeDistribution.parse(cmd.getOptionValue("z", "fixed"),
+                    arguments.packetSizeInBytes);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Invalid payload distribution: " + e.getMessage());
+            System.exit(1);
+        }
+        if (cmd.hasOption("n")) {
+            arguments.payloadEntropyInBits = Integer.parseInt(cmd.getOptionValue("n"));
+            if (arguments.payloadEntropyInBits < 0 || arguments.payloadEntropyInBits > 8) {
+                System.err.println("Entropy must be between 0 and 8 bits per byte.");
+                System.exit(1);
+            }
+        }
+        if (cmd.hasOption("k")) {
+            arguments.compressionLevel = Integer.parseInt(cmd.getOptionValue("k"));
+            if (arguments.compressionLevel < 1 || arguments.compressionLevel > 9) {
+                System.err.println("Compression level must be between 1 and 9.");
+                System.exit(1);
+            }
+        }
+        if (cmd.hasOption("t")) {
+            arguments.traceRecordPath = cmd.getOptionValue("t");
+        }
+        if (cmd.hasOption("y")) {
+            arguments.traceReplayPath = cmd.getOptionValue("y");
+            if (arguments.traceRecordPath != null) {
+                System.err.println("Cannot record and replay a trace at the same time.");
+                System.exit(1);
+            }
+        }
+        if (cmd.hasOption("l")) {
+            arguments.numberOfListeners = Integer.parseInt(cmd.getOptionValue("l"));
+            if (arguments.numberOfListeners < 1) {
+                System.err.println("There must be at least one listener.");
+                System.exit(1);
+            } else if (arguments.numberOfListeners > 1 && arguments.traceRecordPath != null) {
+                System.err.println("Cannot record a trace with multiple listeners.");
+                System.exit(1);
+            } else if (arguments.numberOfListeners > 1 && arguments.traceReplayPath != null) {
+                System.err.println("Cannot replay a trace with multiple listeners.");
+                System.exit(1);
+            }
+        }
+        if (cmd.hasOption("x")) {
+            arguments.replaySpeed = Double.parseDouble(cmd.getOptionValue("x"));
+            if (arguments.replaySpeed <= 0) {
+                System.err.println("Replay speed must be greater than zero.");
+                System.exit(1);
+            }
+        }
+        if (cmd.hasOption("f")) {
+            arguments.replayFanOut = Integer.parseInt(cmd.getOptionValue("f"));
+            if (arguments.replayFanOut < 1) {
+                System.err.println("Fan-out must be at least 1.");
+                System.exit(1);
+            }
+        }
 
         return arguments;
     }
@@ -0,0 +1,29 @@
+package com.luciopaiva.control;
+
+/**
+ * Line-based text protocol spoken between LoadController and its TcpClients workers. Each message is a line made of
+ * space-separated tokens, the first one being the command:
+ *
+ *     worker -> controller: HELLO
+ *     controller -> worker: CONFIG <client arguments...>
+ *     worker -> controller: READY
+ *     controller -> worker: START <wall clock time to start at, in epoch millis>
+ *     worker -> controller: METRICS <interval> <clients> <waiting> <connect> <confail> <bytes in> <connect histogram>
+ *     worker -> controller: DONE
+ */
+public final class ControlProtocol {
+
+    public static final int DEFAULT_CONTROL_PORT = 3001;
+
+    public static final String HELLO = "HELLO";
+    public static final String CONFIG = "CONFIG";
+    public static final String READY = "READY";
+    public static final String START = "START";
+    public static final String METRICS = "METRICS";
+    public static final String DONE = "DONE";
+
+    public static final String TOKEN_SEPARATOR = " ";
+
+    private ControlProtocol() {
+    }
+}
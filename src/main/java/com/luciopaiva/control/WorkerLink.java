@@ -0,0 +1,111 @@
+package com.luciopaiva.control;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Worker side of the control connection. It uses a plain blocking socket: the worker only talks to the controller
+ * before its main loop starts and once per report period afterwards, and messages are tiny.
+ */
+public class WorkerLink implements Closeable {
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final OutputStream out;
+    private final StringBuilder message = new StringBuilder(1024);
+    private byte[] messageBytes = new byte[1024];
+
+    private WorkerLink(Socket socket) throws IOException {
+        this.socket = socket;
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        out = socket.getOutputStream();
+    }
+
+    /** @param controllerAddress in the form host:port */
+    public static WorkerLink connect(String controllerAddress) throws IOException {
+        int colon = controllerAddress.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Controller address must be in the form host:port");
+        }
+        String host = controllerAddress.substring(0, colon);
+        int port = Integer.parseInt(controllerAddress.substring(colon + 1));
+
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port));
+        return new WorkerLink(socket);
+    }
+
+    /** Says hello and waits for the controller to send the configuration to run with. */
+    public String[] awaitConfig() throws IOException {
+        beginMessage(ControlProtocol.HELLO);
+        send();
+        String[] tokens = expect(ControlProtocol.CONFIG);
+        return Arrays.copyOfRange(tokens, 1, tokens.length);
+    }
+
+    /** Tells the controller we're ready and sleeps until the time it says all workers must start at. */
+    public void awaitStart() throws IOException {
+        beginMessage(ControlProtocol.READY);
+        send();
+        String[] tokens = expect(ControlProtocol.START);
+        long startTime = Long.parseLong(tokens[1]);
+
+        long waitTime;
+        while ((waitTime = startTime - System.currentTimeMillis()) > 0) {
+            try {
+                Thread.sleep(waitTime);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Starts a new message with the given command. The caller appends the remaining tokens to the returned builder,
+     * each preceded by a TOKEN_SEPARATOR, and then calls send(). The builder is reused, so this produces no garbage.
+     */
+    public StringBuilder beginMessage(String command) {
+        message.setLength(0);
+        message.append(command);
+        return message;
+    }
+
+    public void send() throws IOException {
+        message.append('\n');
+        int length = message.length();
+        if (messageBytes.length < length) {
+            messageBytes = new byte[length];
+        }
+        for (int i = 0; i < length; i++) {
+            messageBytes[i] = (byte) message.charAt(i);  // protocol is plain ASCII
+        }
+        out.write(messageBytes, 0, length);
+        out.flush();
+    }
+
+    private String[] expect(String command) throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException("Controller closed the connection");
+        }
+        String[] tokens = line.split(ControlProtocol.TOKEN_SEPARATOR);
+        if (!command.equals(tokens[0])) {
+            throw new IOException(String.format("Expected %s from controller, received '%s'", command, line));
+        }
+        return tokens;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,161 @@
+package com.luciopaiva.payload;
+
+import com.luciopaiva.Constants;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Hands out payloads to send, keeping all the expensive work off the hot path.
+ *
+ * Content is generated once at startup into a single block, with the requested entropy: each byte is drawn from an
+ * alphabet of 2^entropy symbols, so 8 bits per byte means incompressible random data and 0 means all zeros. A pool
+ * of payloads, with sizes drawn from the given distribution, is then carved out of that block at random offsets.
+ *
+ * If compression is enabled, each payload is deflated when handed out, i.e., once per send tick and not once per
+ * client. That is the only work done per payload, so its cost can be measured against the bandwidth it saves.
+ */
+public class PayloadGenerator {
+
+    private final ByteBuffer[] pool;
+    /** for payloads of a specific size (e.g., when replaying a trace); these always start at the top of the block */
+    private final ByteBuffer sizedPayload;
+    private final int maxSize;
+    private int nextIndex = 0;
+
+    private final Deflater deflater;
+    private final byte[] compressed;
+    private final ByteBuffer compressedPayload;
+
+    private int lastRawSize;
+    private long rawBytes = 0;
+    private long compressedBytes = 0;
+    private long compressionTimeInNanos = 0;
+
+    /**
+     * @param minCapacity payloads of up to this size can be requested via next(int)
+     * @param compressionLevel from 1 to 9, or 0 to disable compression
+     */
+    public PayloadGenerator(SizeDistribution sizes, int entropyInBits, int compressionLevel, int minCapacity) {
+        Random random = new Random(42);
+
+        // drawn sizes are capped so a long tail can't blow up memory, but a fixed size is sent as asked
+        int sizeCap = sizes instanceof SizeDistribution.Fixed ? Integer.MAX_VALUE : Constants.MAX_PAYLOAD_SIZE_IN_BYTES;
+        int[] poolSizes = new int[Constants.PAYLOAD_POOL_SIZE];
+        int largestPoolSize = 0;
+        for (int i = 0; i < poolSizes.length; i++) {
+            poolSizes[i] = Math.max(1, Math.min(sizes.nextSize(random), sizeCap));
+            largestPoolSize = Math.max(largestPoolSize, poolSizes[i]);
+        }
+        maxSize = Math.max(largestPoolSize, minCapacity);
+
+        // twice as large as the largest payload, so payloads can start at different offsets
+        byte[] content = new byte[2 * maxSize];
+        if (entropyInBits >= Byte.SIZE) {
+            random.nextBytes(content);
+        } else {
+            int alphabetSize = 1 << entropyInBits;
+            for (int i = 0; i < content.length; i++) {
+                content[i] = (byte) random.nextInt(alphabetSize);
+            }
+        }
+
+        pool = new ByteBuffer[poolSizes.length];
+        for (int i = 0; i < pool.length; i++) {
+            int offset = random.nextInt(content.length - poolSizes[i] + 1);
+            pool[i] = ByteBuffer.wrap(content, offset, poolSizes[i]).slice();
+        }
+        sizedPayload = ByteBuffer.wrap(content, 0, maxSize).slice();
+
+        if (compressionLevel > 0) {
+            deflater = new Deflater(compressionLevel);
+            // room for incompressible data: deflate adds 5 bytes per stored block of up to 16k, plus headers
+            compressed = new byte[maxSize + maxSize / 1024 + 64];
+            compressedPayload = ByteBuffer.wrap(compressed);
+        } else {
+            deflater = null;
+            compressed = null;
+            compressedPayload = null;
+        }
+    }
+
+    /** @return the next payload in the pool, ready to be sent from position zero up to its limit */
+    public ByteBuffer next() {
+        ByteBuffer payload = pool[nextIndex];
+        nextIndex = (nextIndex + 1) % pool.length;
+        payload.position(0);
+        return prepare(payload);
+    }
+
+    /** @return a payload with exactly the given size (before compression), which must not exceed getMaxSize() */
+    public ByteBuffer next(int size) {
+        sizedPayload.position(0);
+        sizedPayload.limit(size);
+        return prepare(sizedPayload);
+    }
+
+    private ByteBuffer prepare(ByteBuffer payload) {
+        lastRawSize = payload.limit();
+        rawBytes += lastRawSize;
+        if (deflater == null) {
+            compressedBytes += lastRawSize;
+            return payload;
+        }
+
+        long start = System.nanoTime();
+        deflater.reset();
+        deflater.setInput(payload.array(), payload.arrayOffset(), payload.limit());
+        deflater.finish();
+        int length = deflater.deflate(compressed, 0, compressed.length);
+        compressionTimeInNanos += System.nanoTime() - start;
+        if (!deflater.finished()) {
+            // the buffer is sized for the worst case, so this would mean a truncated payload going out
+            throw new IllegalStateException(String.format("Compressed payload of %d bytes does not fit in %d bytes",
+                    lastRawSize, compressed.length));
+        }
+
+        compressedBytes += length;
+        compressedPayload.position(0);
+        compressedPayload.limit(length);
+        return compressedPayload;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public boolean isCompressing() {
+        return deflater != null;
+    }
+
+    /** @return size of the last payload handed out, before compression */
+    public int getLastRawSize() {
+        return lastRawSize;
+    }
+
+    /** @return compressed bytes as a percentage of raw bytes since the last reset */
+    public long getCompressionRatio() {
+        return rawBytes > 0 ? 100 * compressedBytes / rawBytes : 100;
+    }
+
+    /** @return bytes handed out since the last reset, before compression */
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    /** @return bytes handed out since the last reset, after compression (same as raw if not compressing) */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public long getCompressionTimeInNanos() {
+        return compressionTimeInNanos;
+    }
+
+    public void resetMetrics() {
+        rawBytes = 0;
+        compressedBytes = 0;
+        compressionTimeInNanos = 0;
+    }
+}
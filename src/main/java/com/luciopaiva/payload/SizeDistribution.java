@@ -0,0 +1,123 @@
+package com.luciopaiva.payload;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+/** Distribution payload sizes are drawn from. */
+public interface SizeDistribution {
+
+    int nextSize(Random random);
+
+    /**
+     * Parses one of:
+     *
+     *     fixed                 always the given fixed size
+     *     uniform:MIN:MAX       uniformly distributed between MIN and MAX bytes, inclusive
+     *     lognormal:MU:SIGMA    log-normal, where MU and SIGMA are the mean and standard deviation of ln(size)
+     *     file:PATH             sampled from sizes listed in the file, one per line (e.g., taken from production)
+     */
+    static SizeDistribution parse(String spec, int fixedSize) throws IOException {
+        String[] parts = spec.split(":", 2);
+        String[] parameters = parts.length > 1 ? parts[1].split(":") : new String[0];
+        switch (parts[0]) {
+            case "fixed":
+                return new Fixed(fixedSize);
+            case "uniform":
+                checkParameterCount(spec, parameters, 2);
+                return new Uniform(Integer.parseInt(parameters[0]), Integer.parseInt(parameters[1]));
+            case "lognormal":
+                checkParameterCount(spec, parameters, 2);
+                return new LogNormal(Double.parseDouble(parameters[0]), Double.parseDouble(parameters[1]));
+            case "file":
+                checkParameterCount(spec, parameters, 1);
+                return Empirical.load(parts[1]);
+            default:
+                throw new IllegalArgumentException("Unknown size distribution '" + spec + "'");
+        }
+    }
+
+    static void checkParameterCount(String spec, String[] parameters, int expected) {
+        if (parameters.length != expected) {
+            throw new IllegalArgumentException(String.format("Size distribution '%s' expects %d parameter(s)",
+                    spec, expected));
+        }
+    }
+
+    class Fixed implements SizeDistribution {
+
+        private final int size;
+
+        Fixed(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int nextSize(Random random) {
+            return size;
+        }
+    }
+
+    class Uniform implements SizeDistribution {
+
+        private final int min;
+        private final int max;
+
+        Uniform(int min, int max) {
+            if (min > max) {
+                throw new IllegalArgumentException("Minimum size must not be greater than maximum size");
+            }
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public int nextSize(Random random) {
+            return min + random.nextInt(max - min + 1);
+        }
+    }
+
+    class LogNormal implements SizeDistribution {
+
+        private final double mu;
+        private final double sigma;
+
+        LogNormal(double mu, double sigma) {
+            this.mu = mu;
+            this.sigma = sigma;
+        }
+
+        @Override
+        public int nextSize(Random random) {
+            return (int) Math.min(Integer.MAX_VALUE, Math.round(Math.exp(mu + sigma * random.nextGaussian())));
+        }
+    }
+
+    class Empirical implements SizeDistribution {
+
+        private final int[] sizes;
+
+        Empirical(int[] sizes) {
+            if (sizes.length == 0) {
+                throw new IllegalArgumentException("Empirical size distribution needs at least one sample");
+            }
+            this.sizes = sizes;
+        }
+
+        static Empirical load(String path) throws IOException {
+            List<String> lines = Files.readAllLines(Paths.get(path));
+            return new Empirical(lines.stream()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .mapToInt(Integer::parseInt)
+                    .toArray());
+        }
+
+        @Override
+        public int nextSize(Random random) {
+            return sizes[random.nextInt(sizes.length)];
+        }
+    }
+}
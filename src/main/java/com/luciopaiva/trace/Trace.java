@@ -0,0 +1,26 @@
+package com.luciopaiva.trace;
+
+/**
+ * Binary traffic trace format. All values are big-endian.
+ *
+ *     header:  int magic ('TCPT'), int version
+ *     records: long timestamp (nanos since recording started), int topic, int size (bytes)
+ *
+ * A topic identifies the group of clients a message goes to; ALL_CLIENTS means a broadcast. Records are sorted by
+ * timestamp. A record with size zero marks the end of the trace (a recording that was not closed properly ends with
+ * zeroed records, so readers must stop there as well).
+ */
+public final class Trace {
+
+    public static final int MAGIC = 0x54435054;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 2 * Integer.BYTES;
+    public static final int RECORD_SIZE = Long.BYTES + 2 * Integer.BYTES;
+    public static final int ALL_CLIENTS = -1;
+
+    /** Traces are mapped into memory in regions of this size, so files can grow past 2 GB. */
+    static final long REGION_SIZE_IN_BYTES = 64 * 1024 * 1024;
+
+    private Trace() {
+    }
+}
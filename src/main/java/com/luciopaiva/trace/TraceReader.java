@@ -0,0 +1,119 @@
+package com.luciopaiva.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a trace file sequentially through memory-mapped regions. Usage:
+ *
+ *     while (reader.next()) {
+ *         doSomethingWith(reader.timeInNanos(), reader.topic(), reader.size());
+ *     }
+ *
+ * Opening a trace scans it once to find its largest message and highest topic, so callers can size buffers upfront.
+ */
+public class TraceReader implements Closeable {
+
+    private final FileChannel channel;
+    private final long fileSize;
+
+    private MappedByteBuffer region;
+    private long regionOffset;
+
+    private long timeInNanos;
+    private int topic;
+    private int size;
+
+    private long recordCount;
+    private int maxSize;
+    private int maxTopic = -1;
+
+    public TraceReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        fileSize = channel.size();
+
+        rewind();
+        if (fileSize < Trace.HEADER_SIZE || region.getInt() != Trace.MAGIC) {
+            channel.close();
+            throw new IOException("Not a trace file: " + path);
+        }
+        int version = region.getInt();
+        if (version != Trace.VERSION) {
+            channel.close();
+            throw new IOException(String.format("Unsupported trace version %d in %s", version, path));
+        }
+
+        while (next()) {
+            recordCount++;
+            maxSize = Math.max(maxSize, size);
+            maxTopic = Math.max(maxTopic, topic);
+        }
+        rewind();
+        region.position(Trace.HEADER_SIZE);
+    }
+
+    /**
+     * Moves on to the next record.
+     *
+     * @return false if the trace is over
+     */
+    public boolean next() throws IOException {
+        if (region.remaining() < Trace.RECORD_SIZE) {
+            long offset = regionOffset + region.position();
+            if (fileSize - offset < Trace.RECORD_SIZE) {
+                return false;
+            }
+            mapRegion(offset);
+        }
+        timeInNanos = region.getLong();
+        topic = region.getInt();
+        size = region.getInt();
+        return size > 0;
+    }
+
+    private void rewind() throws IOException {
+        mapRegion(0);
+    }
+
+    private void mapRegion(long offset) throws IOException {
+        long length = Math.min(Trace.REGION_SIZE_IN_BYTES, fileSize - offset);
+        region = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        regionOffset = offset;
+    }
+
+    /** @return nanos since the recording started */
+    public long timeInNanos() {
+        return timeInNanos;
+    }
+
+    public int topic() {
+        return topic;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** @return highest topic found in the trace, or -1 if it only has broadcasts */
+    public int getMaxTopic() {
+        return maxTopic;
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,57 @@
+package com.luciopaiva.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends records to a trace file through a memory-mapped region, so recording costs no system calls except when a
+ * region fills up and the next one is mapped.
+ */
+public class TraceWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final long startTimeInNanos;
+
+    private MappedByteBuffer region;
+    private long regionOffset;
+
+    public TraceWriter(Path path, long startTimeInNanos) throws IOException {
+        this.startTimeInNanos = startTimeInNanos;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapRegion(0);
+        region.putInt(Trace.MAGIC);
+        region.putInt(Trace.VERSION);
+    }
+
+    /**
+     * @param timeInNanos as given by System.nanoTime()
+     */
+    public void append(long timeInNanos, int topic, int size) throws IOException {
+        if (region.remaining() < Trace.RECORD_SIZE) {
+            mapRegion(regionOffset + region.position());
+        }
+        region.putLong(timeInNanos - startTimeInNanos);
+        region.putInt(topic);
+        region.putInt(size);
+    }
+
+    private void mapRegion(long offset) throws IOException {
+        region = channel.map(FileChannel.MapMode.READ_WRITE, offset, Trace.REGION_SIZE_IN_BYTES);
+        regionOffset = offset;
+    }
+
+    /** Flushes everything to disk and trims the zeroed tail of the last mapped region. */
+    @Override
+    public void close() throws IOException {
+        long length = regionOffset + region.position();
+        region.force();
+        region = null;
+        channel.truncate(length);
+        channel.close();
+    }
+}
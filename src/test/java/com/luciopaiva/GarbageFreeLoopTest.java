@@ -0,0 +1,87 @@
+package com.luciopaiva;
+
+import com.luciopaiva.arguments.ClientArguments;
+import com.luciopaiva.arguments.ServerArguments;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs server and clients over loopback and checks that, once all clients are connected, their main loops stop
+ * allocating. Requires the same JVM options as the launch scripts (see build.gradle); without them, the selector's
+ * key set can't be swapped and the JDK boxes file descriptors, so both loops produce garbage on every pass.
+ *
+ * The test JVM also runs with C1 only. Whenever C2 is about to compile a method, the JVM resolves all string
+ * constants of its class in the thread that asked for the compilation, which shows up as a few hundred bytes
+ * allocated by the loop thread at random times, sometimes minutes into a run. C1 doesn't do that, and doesn't do
+ * escape analysis either, so any allocation left in our code is counted instead of being optimized away.
+ */
+public class GarbageFreeLoopTest {
+
+    private static final int NUMBER_OF_CLIENTS = 100;
+    /** time for clients to connect and for the JIT to compile the hot paths */
+    private static final long WARM_UP_IN_MILLIS = 5000;
+    private static final long MEASUREMENT_IN_MILLIS = 4000;
+    /** leaves some room for one-off allocations outside our control */
+    private static final long MAX_ALLOCATED_BYTES = 256;
+
+    private final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void burstStrategyLoopsAreGarbageFree() throws Exception {
+        assertLoopsAreGarbageFree("burst");
+    }
+
+    @Test
+    public void uniformStrategyLoopsAreGarbageFree() throws Exception {
+        assertLoopsAreGarbageFree("uniform");
+    }
+
+    private void assertLoopsAreGarbageFree(String sendStrategy) throws Exception {
+        TcpServer server = new TcpServer(ServerArguments.parse("-p", "0", "-g", sendStrategy,
+                "-e", "20", "-w", "5", "-r", "1000"), 0, null);
+        server.bind();
+        Thread serverThread = startLoop("server", () -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+
+        TcpClients clients = new TcpClients(ClientArguments.parse("-a", "127.0.0.1",
+                "-p", String.valueOf(server.getLocalPort()), "-c", String.valueOf(NUMBER_OF_CLIENTS),
+                "-w", "5", "-r", "1000"), null);
+        Thread clientsThread = startLoop("clients", clients::run);
+
+        try {
+            Thread.sleep(WARM_UP_IN_MILLIS);
+            long serverBefore = threadMXBean.getThreadAllocatedBytes(serverThread.getId());
+            long clientsBefore = threadMXBean.getThreadAllocatedBytes(clientsThread.getId());
+            Thread.sleep(MEASUREMENT_IN_MILLIS);
+            long serverAllocated = threadMXBean.getThreadAllocatedBytes(serverThread.getId()) - serverBefore;
+            long clientsAllocated = threadMXBean.getThreadAllocatedBytes(clientsThread.getId()) - clientsBefore;
+
+            assertTrue(String.format("Server loop allocated %d bytes in %d ms", serverAllocated,
+                    MEASUREMENT_IN_MILLIS), serverAllocated <= MAX_ALLOCATED_BYTES);
+            assertTrue(String.format("Clients loop allocated %d bytes in %d ms", clientsAllocated,
+                    MEASUREMENT_IN_MILLIS), clientsAllocated <= MAX_ALLOCATED_BYTES);
+        } finally {
+            clients.stop();
+            server.stop();
+            clientsThread.join();
+            serverThread.join();
+        }
+    }
+
+    private static Thread startLoop(String name, Runnable loop) {
+        Thread thread = new Thread(loop, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
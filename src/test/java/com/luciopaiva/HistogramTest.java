@@ -0,0 +1,101 @@
+package com.luciopaiva;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        Histogram histogram = new Histogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertWithinRelativeError(500, histogram.getValueAtPercentile(50));
+        assertWithinRelativeError(990, histogram.getValueAtPercentile(99));
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void encodedHistogramDecodesToTheSameBuckets() {
+        Histogram original = new Histogram();
+        original.record(3);
+        original.record(3);
+        original.record(150);
+        original.record(1_000_000);
+
+        Histogram decoded = decode(original);
+
+        assertEquals(original.getCount(), decoded.getCount());
+        assertEquals(original.getMax(), decoded.getMax());
+        for (int percentile = 1; percentile <= 100; percentile++) {
+            assertEquals(original.getValueAtPercentile(percentile), decoded.getValueAtPercentile(percentile));
+        }
+    }
+
+    @Test
+    public void emptyHistogramEncodesAsDash() {
+        StringBuilder encoded = new StringBuilder();
+        new Histogram().appendTo(encoded);
+
+        assertEquals("-", encoded.toString());
+        assertEquals(0, decode(new Histogram()).getCount());
+    }
+
+    @Test
+    public void mergedHistogramHasGlobalPercentiles() {
+        // one process sees only fast connects and the other only slow ones: the global median is neither average
+        Histogram fast = new Histogram();
+        Histogram slow = new Histogram();
+        for (int i = 0; i < 90; i++) {
+            fast.record(10);
+        }
+        for (int i = 0; i < 10; i++) {
+            slow.record(5000);
+        }
+
+        Histogram merged = decode(fast);
+        merged.addEncoded(encode(slow));
+
+        assertEquals(100, merged.getCount());
+        assertEquals(5000, merged.getMax());
+        assertEquals(10, merged.getValueAtPercentile(50));
+        assertEquals(10, merged.getValueAtPercentile(90));
+        assertWithinRelativeError(5000, merged.getValueAtPercentile(91));
+
+        Histogram added = new Histogram();
+        added.add(fast);
+        added.add(slow);
+        assertEquals(merged.getCount(), added.getCount());
+        assertEquals(merged.getValueAtPercentile(95), added.getValueAtPercentile(95));
+    }
+
+    private static String encode(Histogram histogram) {
+        StringBuilder encoded = new StringBuilder();
+        histogram.appendTo(encoded);
+        return encoded.toString();
+    }
+
+    private static Histogram decode(Histogram histogram) {
+        Histogram decoded = new Histogram();
+        decoded.addEncoded(encode(histogram));
+        return decoded;
+    }
+
+    private static void assertWithinRelativeError(long expected, long actual) {
+        assertEquals(expected, actual, expected * 0.125);
+    }
+}
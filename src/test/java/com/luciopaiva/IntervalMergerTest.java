@@ -0,0 +1,125 @@
+package com.luciopaiva;
+
+import com.luciopaiva.control.ControlProtocol;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class IntervalMergerTest {
+
+    private final List<IntervalMerger.IntervalMetrics> completed = new ArrayList<>();
+    private IntervalMerger merger;
+
+    @Before
+    public void setUp() {
+        merger = new IntervalMerger(completed::add);
+        merger.addWorker(0);
+        merger.addWorker(1);
+    }
+
+    @Test
+    public void intervalCompletesWhenAllWorkersReportedIt() {
+        merger.add(0, metrics(0, 10, 100));
+        assertEquals(0, completed.size());
+
+        merger.add(1, metrics(0, 20, 5000));
+        assertEquals(1, completed.size());
+
+        IntervalMerger.IntervalMetrics interval = completed.get(0);
+        assertEquals(0, interval.interval);
+        assertEquals(2, interval.reportCount);
+        assertEquals(30, interval.clients);
+        assertEquals(2, interval.connectTimesInMicros.getCount());
+        assertEquals(5000, interval.connectTimesInMicros.getMax());
+    }
+
+    @Test
+    public void intervalsCompleteInOrder() {
+        merger.add(0, metrics(0, 1, 100));
+        merger.add(0, metrics(1, 1, 100));
+        merger.add(1, metrics(0, 1, 100));
+        merger.add(1, metrics(1, 1, 100));
+
+        assertEquals(2, completed.size());
+        assertEquals(0, completed.get(0).interval);
+        assertEquals(1, completed.get(1).interval);
+    }
+
+    @Test
+    public void leavingWorkerIsNoLongerWaitedFor() {
+        merger.add(0, metrics(0, 10, 100));
+        merger.add(1, metrics(0, 20, 100));
+        merger.add(0, metrics(1, 10, 100));
+        merger.add(0, metrics(2, 10, 100));
+
+        // worker 1 leaves without reporting intervals 1 and 2
+        merger.removeWorker(1);
+
+        assertEquals(3, completed.size());
+        assertEquals(2, completed.get(0).reportCount);
+        assertEquals(1, completed.get(1).reportCount);
+        assertEquals(10, completed.get(2).clients);
+    }
+
+    @Test
+    public void intervalStillWaitsForWorkersThatHaveNotLeft() {
+        merger.addWorker(2);
+        merger.add(0, metrics(0, 10, 100));
+        merger.add(1, metrics(0, 20, 100));
+
+        // worker 0 already reported interval 0, so its data stays, but interval 0 still waits for worker 2
+        merger.removeWorker(0);
+        assertEquals(0, completed.size());
+
+        merger.add(2, metrics(0, 30, 100));
+        assertEquals(1, completed.size());
+        assertEquals(3, completed.get(0).reportCount);
+        assertEquals(60, completed.get(0).clients);
+    }
+
+    @Test
+    public void completedIntervalIsNotReopened() {
+        merger.add(0, metrics(0, 10, 100));
+        merger.removeWorker(1);
+        assertEquals(1, completed.size());
+
+        // a late report from a worker that was dropped must not print interval 0 again
+        merger.add(1, metrics(0, 20, 100));
+        merger.add(0, metrics(1, 10, 100));
+
+        assertEquals(2, completed.size());
+        assertEquals(0, completed.get(0).interval);
+        assertEquals(1, completed.get(1).interval);
+        assertEquals(1, completed.get(1).reportCount);
+    }
+
+    @Test
+    public void pendingIntervalsCompleteWhenLastWorkerLeaves() {
+        merger.add(0, metrics(0, 10, 100));
+        merger.add(0, metrics(1, 10, 100));
+        merger.removeWorker(0);
+        assertEquals(0, completed.size());
+
+        merger.removeWorker(1);
+        assertEquals(2, completed.size());
+    }
+
+    private static String[] metrics(long interval, long clients, long connectTimeInMicros) {
+        Histogram connectTimes = new Histogram();
+        connectTimes.record(connectTimeInMicros);
+        StringBuilder message = new StringBuilder(ControlProtocol.METRICS);
+        message.append(ControlProtocol.TOKEN_SEPARATOR).append(interval);
+        message.append(ControlProtocol.TOKEN_SEPARATOR).append(clients);
+        message.append(ControlProtocol.TOKEN_SEPARATOR).append(0);
+        message.append(ControlProtocol.TOKEN_SEPARATOR).append(1);
+        message.append(ControlProtocol.TOKEN_SEPARATOR).append(0);
+        message.append(ControlProtocol.TOKEN_SEPARATOR).append(1024);
+        message.append(ControlProtocol.TOKEN_SEPARATOR);
+        connectTimes.appendTo(message);
+        return message.toString().split(ControlProtocol.TOKEN_SEPARATOR);
+    }
+}
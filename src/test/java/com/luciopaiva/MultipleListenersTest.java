@@ -0,0 +1,84 @@
+package com.luciopaiva;
+
+import com.luciopaiva.arguments.ServerArguments;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs several listeners on the same port, as --listeners does, and checks that what they publish adds up.
+ */
+public class MultipleListenersTest {
+
+    private static final int NUMBER_OF_LISTENERS = 2;
+    private static final int NUMBER_OF_CLIENTS = 200;
+    private static final long TIMEOUT_IN_MILLIS = 5000;
+
+    @Test
+    public void everyAcceptedConnectionIsCounted() throws Exception {
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            assumeTrue("SO_REUSEPORT is not supported here", Utils.findSocketOption(probe, "SO_REUSEPORT") != null);
+        }
+
+        ListenerStats listenerStats = new ListenerStats(NUMBER_OF_LISTENERS);
+        List<TcpServer> servers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        List<SocketChannel> clients = new ArrayList<>();
+        try {
+            // a short report period, so reports often fall in the same loop pass as accepts
+            String port = "0";
+            for (int i = 0; i < NUMBER_OF_LISTENERS; i++) {
+                TcpServer server = new TcpServer(ServerArguments.parse("-p", port, "-l",
+                        String.valueOf(NUMBER_OF_LISTENERS), "-r", "1"), i, listenerStats);
+                server.bind();
+                port = String.valueOf(server.getLocalPort());
+                servers.add(server);
+                threads.add(startLoop("listener-" + i, server));
+            }
+
+            for (int i = 0; i < NUMBER_OF_CLIENTS; i++) {
+                clients.add(SocketChannel.open(new InetSocketAddress("127.0.0.1", Integer.parseInt(port))));
+            }
+
+            long deadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+            while (listenerStats.sum(ListenerStats.CLIENTS) < NUMBER_OF_CLIENTS &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            // give listeners a few more passes, in case anything would still be counted late
+            Thread.sleep(100);
+
+            assertEquals(NUMBER_OF_CLIENTS, listenerStats.sum(ListenerStats.CLIENTS));
+            assertEquals(NUMBER_OF_CLIENTS, listenerStats.sum(ListenerStats.ACCEPTS));
+        } finally {
+            for (SocketChannel client : clients) {
+                client.close();
+            }
+            servers.forEach(TcpServer::stop);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+
+    private static Thread startLoop(String name, TcpServer server) {
+        Thread thread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}